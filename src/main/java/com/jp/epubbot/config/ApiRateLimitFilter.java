@@ -0,0 +1,166 @@
+package com.jp.epubbot.config;
+
+import com.jp.epubbot.service.InitDataVerifier;
+import com.jp.epubbot.service.RateLimiter;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * /api/miniapp/** 限流：每个 IP 一个桶，请求带有效的 initData 时该用户再一个桶，
+ * 带搜索词的书籍列表额外走 SEARCH 策略。超出时返回 429。
+ * 用户只认 initData 校验出的身份，请求参数里的 userId 可以随意填写，不能作为限流的 key。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ApiRateLimitFilter extends OncePerRequestFilter {
+
+    private static final String PREFIX = "/api/miniapp/";
+
+    private static final String INIT_DATA_HEADER = "X-Telegram-Init-Data";
+
+    private final RateLimiter rateLimiter;
+    private final InitDataVerifier initDataVerifier;
+
+    // 开启后，只有来自 trusted-proxies 的请求才从 CF-Connecting-IP / X-Forwarded-For 取真实 IP，
+    // 其他来源的请求头可能是伪造的，仍按连接地址限流
+    @Value("${app.rate-limit.trust-forwarded-headers:false}")
+    private boolean trustForwardedHeaders;
+
+    // 逗号分隔的 CIDR，例如 Cloudflare 的回源地址段
+    @Value("${app.rate-limit.trusted-proxies:}")
+    private String trustedProxies;
+
+    private List<Cidr> proxies = List.of();
+
+    private record Cidr(byte[] network, int prefix) {
+
+        static Cidr parse(String text) {
+            String[] parts = text.split("/", 2);
+            byte[] address = literalAddress(parts[0].trim());
+            if (address == null) {
+                throw new IllegalArgumentException("无效的地址段: " + text);
+            }
+            int prefix = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : address.length * 8;
+            if (prefix < 0 || prefix > address.length * 8) {
+                throw new IllegalArgumentException("无效的地址段: " + text);
+            }
+            return new Cidr(address, prefix);
+        }
+
+        boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            int full = prefix / 8;
+            for (int i = 0; i < full; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            int rest = prefix % 8;
+            if (rest == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - rest) & 0xFF;
+            return (address[full] & mask) == (network[full] & mask);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        proxies = Arrays.stream(StringUtils.split(StringUtils.defaultString(trustedProxies), ", \n"))
+                .map(Cidr::parse)
+                .toList();
+        if (trustForwardedHeaders && proxies.isEmpty()) {
+            log.warn("已开启 app.rate-limit.trust-forwarded-headers，但未配置 trusted-proxies，转发请求头不会被采用");
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(PREFIX) || "OPTIONS".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String ip = clientIp(request);
+        Long userId = initDataVerifier.verify(request.getHeader(INIT_DATA_HEADER));
+        boolean search = request.getRequestURI().equals(PREFIX + "books") && StringUtils.isNotBlank(request.getParameter("search"));
+
+        boolean allowed = rateLimiter.tryAcquire(RateLimiter.Policy.API, "ip:" + ip)
+                && (userId == null || rateLimiter.tryAcquire(RateLimiter.Policy.API, "user:" + userId))
+                && (!search || rateLimiter.tryAcquire(RateLimiter.Policy.SEARCH,
+                userId != null ? "user:" + userId : "ip:" + ip));
+        if (!allowed) {
+            log.debug("接口限流: ip={}, userId={}, uri={}", ip, userId, request.getRequestURI());
+            response.setStatus(429);
+            response.setHeader("Retry-After", "1");
+            response.setContentType("application/json");
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("{\"success\":false,\"error\":\"请求过于频繁，请稍后再试\"}");
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private String clientIp(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (trustForwardedHeaders && fromTrustedProxy(remote)) {
+            String cf = request.getHeader("CF-Connecting-IP");
+            if (StringUtils.isNotBlank(cf)) {
+                return cf.trim();
+            }
+            // 客户端可以自带 X-Forwarded-For，只有最后一项是可信代理追加的
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (StringUtils.isNotBlank(forwarded)) {
+                return StringUtils.substringAfterLast("," + forwarded, ",").trim();
+            }
+        }
+        return remote;
+    }
+
+    private boolean fromTrustedProxy(String remote) {
+        byte[] address = literalAddress(remote);
+        if (address == null) {
+            return false;
+        }
+        for (Cidr cidr : proxies) {
+            if (cidr.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只解析 IP 字面量，不做 DNS 查询
+     */
+    private static byte[] literalAddress(String text) {
+        if (StringUtils.isBlank(text) || !(text.contains(":") || text.matches("[0-9.]+"))) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(text).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
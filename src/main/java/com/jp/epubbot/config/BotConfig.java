@@ -3,8 +3,15 @@ package com.jp.epubbot.config;
 import com.jp.epubbot.service.BookBot;
 import com.jp.epubbot.service.BookmarkService;
 import com.jp.epubbot.service.BookParseService;
+import com.jp.epubbot.service.IngestProgressReporter;
+import com.jp.epubbot.service.RateLimiter;
+import com.jp.epubbot.service.TelegramOutbox;
+import com.jp.epubbot.service.UpdateDispatcher;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
@@ -12,11 +19,13 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 import java.util.Collections;
 
+@Slf4j
 @Configuration
 public class BotConfig {
 
@@ -35,6 +44,19 @@ public class BotConfig {
     @Value("${telegram.bot.webapp-url:}")
     private String webappUrl;
 
+    @Value("${telegram.bot.webhook.public-url:}")
+    private String webhookPublicUrl;
+
+    @Value("${telegram.bot.webhook.path:/telegram/webhook}")
+    private String webhookPath;
+
+    @Value("${telegram.bot.webhook.secret-token:}")
+    private String webhookSecret;
+
+    // Telegram 向 webhook 同时发起的最大连接数（1-100）
+    @Value("${telegram.bot.webhook.max-connections:40}")
+    private int webhookMaxConnections;
+
     @Bean
     public DefaultBotOptions defaultBotOptions() {
         DefaultBotOptions options = new DefaultBotOptions();
@@ -45,17 +67,48 @@ public class BotConfig {
     }
 
     @Bean
-    public BookBot bookBot(DefaultBotOptions options, BookParseService bookParseService, BookmarkService bookmarkService) {
-        return new BookBot(options, botToken, botUsername, bookParseService, bookmarkService, adminList, webappUrl);
+    public BookBot bookBot(DefaultBotOptions options, BookParseService bookParseService, BookmarkService bookmarkService,
+                           UpdateDispatcher updateDispatcher, TelegramOutbox outbox,
+                           IngestProgressReporter progressReporter, RateLimiter rateLimiter) {
+        return new BookBot(options, botToken, botUsername, bookParseService, bookmarkService, updateDispatcher,
+                outbox, progressReporter, rateLimiter, adminList, webappUrl);
     }
 
+    /**
+     * 长轮询模式（默认）：注册时会自动清除已设置的 webhook
+     */
     @Bean
+    @ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "polling", matchIfMissing = true)
     public TelegramBotsApi telegramBotsApi(BookBot bookBot) throws TelegramApiException {
         TelegramBotsApi api = new TelegramBotsApi(DefaultBotSession.class);
         api.registerBot(bookBot);
         return api;
     }
 
+    /**
+     * Webhook 模式：启动完成后向 Telegram 登记回调地址，更新由 TelegramWebhookController 接收
+     */
+    @Bean
+    @ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "webhook")
+    public ApplicationRunner webhookRegistrar(BookBot bookBot) {
+        return args -> {
+            if (StringUtils.isEmpty(webhookPublicUrl)) {
+                throw new IllegalStateException("webhook 模式需要配置 telegram.bot.webhook.public-url");
+            }
+            // 没有密钥时任何人都能向回调地址伪造更新
+            if (StringUtils.isEmpty(webhookSecret) || !webhookSecret.matches("[A-Za-z0-9_-]{1,256}")) {
+                throw new IllegalStateException("webhook 模式需要配置 telegram.bot.webhook.secret-token (1-256 位字母、数字、_ 或 -)");
+            }
+            String url = StringUtils.removeEnd(webhookPublicUrl, "/") + webhookPath;
+            bookBot.execute(SetWebhook.builder()
+                    .url(url)
+                    .maxConnections(webhookMaxConnections)
+                    .secretToken(webhookSecret)
+                    .build());
+            log.info("✅ 已设置 webhook: [{}], maxConnections: {}", url, webhookMaxConnections);
+        };
+    }
+
     @Bean
     public CorsFilter corsFilter() {
         CorsConfiguration config = new CorsConfiguration();
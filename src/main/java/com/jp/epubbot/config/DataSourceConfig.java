@@ -0,0 +1,62 @@
+package com.jp.epubbot.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+
+/**
+ * SQLite 读写分离：
+ * 写连接池只有一个连接（与 SqliteWriter 的单写线程对应），
+ * 读连接池按 CPU 核数放大，连接建立时打开 query_only，WAL 模式下读不阻塞写。
+ * 由 LazyConnectionDataSourceProxy 按事务的 readOnly 标记选择连接池，
+ * Spring Data 仓库的查询方法默认就是 readOnly 事务。
+ * <p>
+ * 没有启用 shared cache：它在 WAL 下会退化成表级锁，反而让读互相等待，每个读连接改用 mmap 读取。
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${app.datasource.read-pool-size:0}")
+    private int readPoolSize;
+
+    @Value("${app.datasource.read-mmap-size:256MB}")
+    private DataSize readMmapSize;
+
+    @Bean(defaultCandidate = false)
+    public HikariDataSource writeDataSource(DataSourceProperties properties) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName("sqlite-writer");
+        ds.setMaximumPoolSize(1);
+        ds.setMinimumIdle(1);
+        return ds;
+    }
+
+    @Bean(defaultCandidate = false)
+    public HikariDataSource readDataSource(DataSourceProperties properties) {
+        int size = readPoolSize > 0 ? readPoolSize : Math.max(2, Runtime.getRuntime().availableProcessors());
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName("sqlite-reader");
+        ds.setMaximumPoolSize(size);
+        ds.setMinimumIdle(1);
+        ds.setConnectionInitSql("PRAGMA query_only = 1");
+        ds.addDataSourceProperty("mmap_size", String.valueOf(readMmapSize.toBytes()));
+        return ds;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") DataSource writeDataSource,
+                                 @Qualifier("readDataSource") DataSource readDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(writeDataSource);
+        proxy.setReadOnlyDataSource(readDataSource);
+        return proxy;
+    }
+}
@@ -0,0 +1,59 @@
+package com.jp.epubbot.config;
+
+import com.jp.epubbot.service.CloudflareService;
+import com.jp.epubbot.service.R2StorageService;
+import com.jp.epubbot.service.RateLimiter;
+import com.jp.epubbot.service.TelegramOutbox;
+import com.jp.epubbot.service.UpdateDispatcher;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 各个队列和限流器的当前状态，以 Gauge / FunctionCounter 的形式在抓取时读取，不在业务路径上打点
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder queueMetrics(R2StorageService r2StorageService, CloudflareService cloudflareService,
+                                    TelegramOutbox telegramOutbox, UpdateDispatcher updateDispatcher) {
+        return registry -> {
+            Gauge.builder("epubbot.r2.uploads.pending", r2StorageService, R2StorageService::pendingUploads)
+                    .description("已提交但尚未完成的 R2 异步上传数")
+                    .register(registry);
+            Gauge.builder("epubbot.r2.limiter.limit", r2StorageService, R2StorageService::concurrencyLimit)
+                    .description("R2 自适应并发上限")
+                    .register(registry);
+            Gauge.builder("epubbot.r2.limiter.in.flight", r2StorageService, R2StorageService::inFlightRequests)
+                    .description("正在进行的 R2 请求数")
+                    .register(registry);
+            Gauge.builder("epubbot.cloudflare.purge.queue", cloudflareService, CloudflareService::pendingCount)
+                    .description("等待发送的 Cloudflare 清除项")
+                    .register(registry);
+            Gauge.builder("epubbot.telegram.outbox.queue", telegramOutbox, TelegramOutbox::queued)
+                    .description("等待发送的 Telegram 请求数")
+                    .register(registry);
+            Gauge.builder("epubbot.telegram.updates.pending", updateDispatcher, UpdateDispatcher::pending)
+                    .description("排队和处理中的 Telegram 更新数")
+                    .register(registry);
+            FunctionCounter.builder("epubbot.telegram.updates.rejected", updateDispatcher, UpdateDispatcher::rejectedCount)
+                    .description("排队已满被拒绝的更新数")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder rateLimitMetrics(RateLimiter rateLimiter) {
+        return registry -> {
+            for (RateLimiter.Policy policy : RateLimiter.Policy.values()) {
+                FunctionCounter.builder("epubbot.ratelimit.rejected", rateLimiter, r -> r.rejectedCount(policy))
+                        .description("被限流拒绝的请求数")
+                        .tag("policy", policy.name().toLowerCase())
+                        .register(registry);
+            }
+        };
+    }
+}
@@ -2,7 +2,6 @@ package com.jp.epubbot.config;
 
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
@@ -29,11 +28,5 @@ public class WebConfig implements WebMvcConfigurer {
                 .maxAge(3600);
     }
 
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // 将 /books/** 的请求映射到本地 data/books/ 目录
-        // 注意：file:data/books/ 指的是运行目录下的 data/books/
-        registry.addResourceHandler("/books/**")
-                .addResourceLocations("file:data/books/");
-    }
+    // /books/** 由 BookFileController 直接读取运行目录下的 data/books/ (ETag / Range / 预压缩 / sendfile)
 }
\ No newline at end of file
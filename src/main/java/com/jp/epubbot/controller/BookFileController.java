@@ -0,0 +1,290 @@
+package com.jp.epubbot.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jp.epubbot.service.LocalBookService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地书籍静态文件：/books/** -> data/books/**
+ * <p>
+ * 相比默认的 ResourceHandler：内容哈希强 ETag + 304、单段 Range、
+ * 优先返回预压缩的 .br / .gz 文件，正文通过 Tomcat sendfile 或 FileChannel.transferTo 零拷贝输出。
+ * 已打包的书籍，{bookId}/{页码}.html 直接从书籍包的映射内存输出。
+ */
+@Slf4j
+@Controller
+@RequiredArgsConstructor
+public class BookFileController {
+
+    private static final Path ROOT = Paths.get("data/books").toAbsolutePath().normalize();
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final Pattern RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+    // 页码最多 9 位，parseInt 不会溢出
+    private static final Pattern PACKED_PAGE = Pattern.compile("^([^/]+)/(\\d{1,9})\\.html$");
+
+    private final LocalBookService localBookService;
+
+    @Value("${app.static.html-max-age:0s}")
+    private Duration htmlMaxAge;
+
+    @Value("${app.static.asset-max-age:365d}")
+    private Duration assetMaxAge;
+
+    // 小于该值时直接 transferTo，sendfile 的额外开销不划算
+    @Value("${app.static.sendfile-min-size:48KB}")
+    private DataSize sendfileMinSize;
+
+    // key: 绝对路径|大小|修改时间
+    private final Cache<String, String> etags = Caffeine.newBuilder().maximumSize(50_000).build();
+
+    private record Variant(Path path, String encoding) {
+    }
+
+    @RequestMapping(value = "/books/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String relative = ((String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE))
+                .substring("/books/".length());
+        Path file = ROOT.resolve(relative).normalize();
+        // 只输出 {bookId}/ 下的页面和资源：根目录下的 .pack 整本书籍包和写入中的 .tmp 文件不对外
+        if (!file.startsWith(ROOT) || ROOT.relativize(file).getNameCount() < 2
+                || file.getFileName().toString().endsWith(".tmp")) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!Files.isRegularFile(file)) {
+            Matcher page = PACKED_PAGE.matcher(relative);
+            LocalBookService.PackedPage packed = page.matches()
+                    ? localBookService.getPackedPage(page.group(1), Integer.parseInt(page.group(2)))
+                    : null;
+            if (packed == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            servePacked(request, response, packed, page.group(2));
+            return;
+        }
+
+        Variant variant = selectVariant(file, request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        BasicFileAttributes attrs = Files.readAttributes(variant.path(), BasicFileAttributes.class);
+        long length = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        String etag = etag(variant.path(), attrs);
+
+        MediaType mediaType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        boolean html = mediaType.isCompatibleWith(MediaType.TEXT_HTML);
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, html
+                ? "public, max-age=" + htmlMaxAge.toSeconds() + ", must-revalidate"
+                : "public, max-age=" + assetMaxAge.toSeconds() + ", immutable");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (variant.encoding() != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, variant.encoding());
+        } else {
+            // 预压缩文件按整体返回，只对原始文件支持 Range
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        }
+
+        long start = 0;
+        long end = length; // exclusive
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && variant.encoding() == null && ifRangeMatches(request, etag, lastModified)) {
+            Matcher m = RANGE.matcher(rangeHeader.trim());
+            if (m.matches() && !(m.group(1).isEmpty() && m.group(2).isEmpty())
+                    && m.group(1).length() < 19 && m.group(2).length() < 19) {
+                if (m.group(1).isEmpty()) {
+                    long suffix = Long.parseLong(m.group(2));
+                    start = Math.max(0, length - suffix);
+                } else {
+                    start = Long.parseLong(m.group(1));
+                    if (!m.group(2).isEmpty()) {
+                        end = Math.min(length, Long.parseLong(m.group(2)) + 1);
+                    }
+                }
+                if (start >= length || start >= end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+            // 多段 Range 不支持，按完整内容返回
+        }
+
+        long count = end - start;
+        response.setContentType(html ? "text/html;charset=UTF-8" : mediaType.toString());
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (count >= sendfileMinSize.toBytes() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, variant.path().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(variant.path(), StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * 书籍包写入后不再修改（转换或重新入库会整体替换并更新修改时间），ETag 由修改时间、页码和长度决定，不需要读内容
+     */
+    private void servePacked(HttpServletRequest request, HttpServletResponse response,
+                             LocalBookService.PackedPage packed, String pageIndex) throws IOException {
+        ByteBuffer content = packed.content();
+        long lastModified = packed.lastModified();
+        String etag = "\"p" + Long.toHexString(lastModified) + "-" + pageIndex + "-" + Integer.toHexString(content.remaining()) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + htmlMaxAge.toSeconds() + ", must-revalidate");
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType("text/html;charset=UTF-8");
+        response.setContentLength(content.remaining());
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        ByteBuffer body = content.duplicate();
+        while (body.hasRemaining()) {
+            target.write(body);
+        }
+        out.flush();
+    }
+
+    private Variant selectVariant(Path file, String acceptEncoding) {
+        if (acceptEncoding != null) {
+            if (acceptEncoding.contains("br")) {
+                Path br = file.resolveSibling(file.getFileName() + ".br");
+                if (Files.isRegularFile(br)) {
+                    return new Variant(br, "br");
+                }
+            }
+            if (acceptEncoding.contains("gzip")) {
+                Path gz = file.resolveSibling(file.getFileName() + ".gz");
+                if (Files.isRegularFile(gz)) {
+                    return new Variant(gz, "gzip");
+                }
+            }
+        }
+        return new Variant(file, null);
+    }
+
+    private String etag(Path path, BasicFileAttributes attrs) {
+        String key = path + "|" + attrs.size() + "|" + attrs.lastModifiedTime().toMillis();
+        return etags.get(key, k -> {
+            try (InputStream in = Files.newInputStream(path)) {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                byte[] buf = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    digest.update(buf, 0, n);
+                }
+                byte[] hash = digest.digest();
+                return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 12)) + "\"";
+            } catch (Exception e) {
+                log.warn("计算 ETag 失败: {}", path, e);
+                return "\"" + Long.toHexString(attrs.size()) + "-" + Long.toHexString(attrs.lastModifiedTime().toMillis()) + "\"";
+            }
+        });
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String c = candidate.trim();
+                if (c.startsWith("W/")) {
+                    c = c.substring(2);
+                }
+                if (c.equals("*") || c.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return date != -1 && lastModified / 1000 <= date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package com.jp.epubbot.controller;
 
+import com.jp.epubbot.entity.DeletionJob;
+import com.jp.epubbot.service.BookCatalogCache;
+import com.jp.epubbot.service.BookDeletionService;
 import com.jp.epubbot.service.BookmarkService;
+import com.jp.epubbot.service.InitDataVerifier;
+import com.jp.epubbot.service.R2StorageService;
+import com.jp.epubbot.service.RateLimiter;
+import com.jp.epubbot.service.ReadingProgressService;
+import com.jp.epubbot.service.TelegramOutbox;
+import com.jp.epubbot.service.UpdateDispatcher;
 import lombok.Data;
-import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -20,6 +28,17 @@ import java.util.*;
 public class MiniAppController {
 
     private final BookmarkService bookmarkService;
+    private final BookCatalogCache bookCatalogCache;
+    private final ReadingProgressService readingProgressService;
+    private final BookDeletionService bookDeletionService;
+    private final R2StorageService r2StorageService;
+    private final UpdateDispatcher updateDispatcher;
+    private final TelegramOutbox telegramOutbox;
+    private final RateLimiter rateLimiter;
+    private final InitDataVerifier initDataVerifier;
+
+    // 小程序前端 Telegram.WebApp.initData 原样放在此请求头中
+    private static final String INIT_DATA_HEADER = "X-Telegram-Init-Data";
 
     @Data
     public static class BookmarkRequest {
@@ -27,6 +46,17 @@ public class MiniAppController {
         private String token;
     }
 
+    @Data
+    public static class ProgressRequest {
+        private Long userId;
+        private String bookName;
+        private String chapterTitle;
+        private String url;
+        private String position;
+        private Double progress;
+        private Long timestamp;
+    }
+
 
     @GetMapping("/health")
     public Map<String, Object> health() {
@@ -47,6 +77,43 @@ public class MiniAppController {
         return info;
     }
 
+    @GetMapping("/stats/cache")
+    public ResponseEntity<Map<String, Object>> cacheStats(@RequestHeader(value = INIT_DATA_HEADER, required = false) String initData) {
+        return adminStats(initData, bookCatalogCache.stats());
+    }
+
+    @GetMapping("/stats/storage")
+    public ResponseEntity<Map<String, Object>> storageStats(@RequestHeader(value = INIT_DATA_HEADER, required = false) String initData) {
+        return adminStats(initData, r2StorageService.limiterStats());
+    }
+
+    @GetMapping("/stats/ratelimit")
+    public ResponseEntity<Map<String, Object>> rateLimitStats(@RequestHeader(value = INIT_DATA_HEADER, required = false) String initData) {
+        return adminStats(initData, rateLimiter.stats());
+    }
+
+    @GetMapping("/stats/dispatcher")
+    public ResponseEntity<Map<String, Object>> dispatcherStats(@RequestHeader(value = INIT_DATA_HEADER, required = false) String initData) {
+        Map<String, Object> stats = new HashMap<>(updateDispatcher.stats());
+        stats.put("outbox", telegramOutbox.stats());
+        return adminStats(initData, stats);
+    }
+
+    /**
+     * 运行状态只对管理员开放，身份来自签名过的 initData 而不是请求参数
+     */
+    private ResponseEntity<Map<String, Object>> adminStats(String initData, Map<String, Object> stats) {
+        Map<String, Object> response = new HashMap<>();
+        if (!bookmarkService.isAdmin(initDataVerifier.verify(initData))) {
+            response.put("success", false);
+            response.put("error", "Forbidden");
+            return ResponseEntity.status(403).body(response);
+        }
+        response.putAll(stats);
+        response.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/validate")
     public Map<String, Object> validateInitData() {
         Map<String, Object> response = new HashMap<>();
@@ -60,29 +127,19 @@ public class MiniAppController {
     public Map<String, Object> getAllBooks(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
             @RequestParam(required = false) String search) {
         Map<String, Object> response = new HashMap<>();
 
         try {
-            List<Map<String, String>> allBooksData = bookmarkService.getAllBooksStructuredWithSearch(search);
-            int totalCount = allBooksData.size();
-            int totalPages = (int) Math.ceil((double) totalCount / size);
-
-            if (page < 0) page = 0;
-            if (page >= totalPages && totalPages > 0) page = totalPages - 1;
-
-            int fromIndex = page * size;
-            int toIndex = Math.min(fromIndex + size, totalCount);
-
-            List<Map<String, String>> pageData = new ArrayList<>();
-            if (fromIndex < totalCount) {
-                pageData = allBooksData.subList(fromIndex, toIndex);
-            }
+            Map<String, Object> result = bookmarkService.listBooks(cursor, page, size, search);
+            List<?> pageData = (List<?>) result.get("books");
 
             response.put("success", true);
-            response.put("totalCount", totalCount);
-            response.put("totalPages", totalPages);
-            response.put("currentPage", page);
+            response.put("totalCount", result.get("totalCount"));
+            response.put("totalPages", result.get("totalPages"));
+            response.put("currentPage", result.get("currentPage"));
+            response.put("nextCursor", result.get("nextCursor"));
             response.put("pageSize", size);
             response.put("count", pageData.size());
             response.put("books", pageData);
@@ -116,10 +173,12 @@ public class MiniAppController {
                 return response;
             }
             log.info("Request to delete book: [{}], userId: [{}]", bookName, userId);
-            boolean isDone = bookmarkService.deleteBook(bookName, userId);
-            if (isDone) {
+            DeletionJob job = bookmarkService.deleteBook(bookName, userId);
+            if (job != null) {
+                // 存储文件在后台清理，可通过 /books/deletions/{jobId} 查看进度
                 response.put("success", true);
                 response.put("message", "Book deleted successfully");
+                response.put("jobId", job.getId());
             } else {
                 response.put("success", false);
                 response.put("message", "You can't delete book! ");
@@ -135,11 +194,32 @@ public class MiniAppController {
         return response;
     }
 
+    @GetMapping("/books/deletions/{jobId}")
+    public Map<String, Object> getDeletionJob(@PathVariable Long jobId) {
+        Map<String, Object> response = new HashMap<>();
+        DeletionJob job = bookDeletionService.getJob(jobId);
+        if (job == null) {
+            response.put("success", false);
+            response.put("error", "Deletion job not found");
+        } else {
+            response.put("success", true);
+            response.put("jobId", job.getId());
+            response.put("bookName", job.getBookName());
+            response.put("status", job.getStatus());
+            response.put("deletedObjects", job.getDeletedObjects());
+            response.put("attempts", job.getAttempts());
+            response.put("error", job.getLastError());
+        }
+        response.put("timestamp", System.currentTimeMillis());
+        return response;
+    }
+
     @GetMapping("/bookmarks")
     public Map<String, Object> getUserBookmarks(
             Long userId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "5") int perBook) {
         Map<String, Object> response = new TreeMap<>();
 
         try {
@@ -150,89 +230,129 @@ public class MiniAppController {
                 return response;
             }
 
-            List<BookmarkService.BookmarkInfo> allBookmarks = bookmarkService.getUserBookmarks(userId);
+            Map<String, Object> result = bookmarkService.getUserBookmarkGroups(userId, page, size, perBook);
 
-            Map<String, List<BookmarkService.BookmarkInfo>> bookGroups = new LinkedHashMap<>();
-            for (BookmarkService.BookmarkInfo bookmark : allBookmarks) {
-                String bookName = bookmark.getBookName();
-                if (bookName == null) bookName = "未知书籍";
-                bookGroups.computeIfAbsent(bookName, k -> new ArrayList<>()).add(bookmark);
-            }
+            response.put("success", true);
+            response.put("totalBookmarks", result.get("totalBookmarks"));
+            response.put("totalPages", result.get("totalPages"));
+            response.put("currentPage", result.get("currentPage"));
+            response.put("pageSize", size);
+            response.put("pageBookmarkCount", result.get("pageBookmarkCount"));
+            response.put("groups", result.get("groups"));
+            response.put("timestamp", System.currentTimeMillis());
 
-            int totalBookmarks = allBookmarks.size();
-            List<Map<String, Object>> allGroups = getAllGroups(bookGroups);
-
-            int currentBookmarkCount = 0;
-            int currentPage = 0;
-            int startGroupIndex = 0;
-            int endGroupIndex = 0;
-            Map<Integer, Map<String, Integer>> pageMap = new LinkedHashMap<>(); // page -> {startGroup, endGroup}
-
-            for (int i = 0; i < allGroups.size(); i++) {
-                Map<String, Object> group = allGroups.get(i);
-                int groupBookmarkCount = (int) group.get("count");
-
-                if (currentBookmarkCount + groupBookmarkCount > size && currentBookmarkCount > 0) {
-                    pageMap.put(currentPage, Map.of(
-                            "startGroup", startGroupIndex,
-                            "endGroup", i - 1
-                    ));
-                    currentPage++;
-                    currentBookmarkCount = 0;
-                    startGroupIndex = i;
-                }
+        } catch (Exception e) {
+            log.error("Failed to get user bookmarks", e);
+            response.put("success", false);
+            response.put("error", "Failed to retrieve bookmarks");
+            response.put("timestamp", System.currentTimeMillis());
+        }
 
-                currentBookmarkCount += groupBookmarkCount;
-                if (currentBookmarkCount == size) {
-                    pageMap.put(currentPage, Map.of(
-                            "startGroup", startGroupIndex,
-                            "endGroup", i
-                    ));
-                    currentPage++;
-                    currentBookmarkCount = 0;
-                    startGroupIndex = i + 1;
-                }
-            }
+        return response;
+    }
 
-            if (currentBookmarkCount > 0 || startGroupIndex < allGroups.size()) {
-                if (startGroupIndex < allGroups.size()) {
-                    pageMap.put(currentPage, Map.of(
-                            "startGroup", startGroupIndex,
-                            "endGroup", allGroups.size() - 1
-                    ));
-                }
+    @GetMapping("/bookmarks/book")
+    public Map<String, Object> getBookBookmarks(
+            Long userId,
+            @RequestParam String bookName,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (userId == null) {
+                response.put("success", false);
+                response.put("error", "User ID is required");
+                response.put("timestamp", System.currentTimeMillis());
+                return response;
             }
 
-            int totalPages = pageMap.size();
+            Map<String, Object> result = bookmarkService.getUserBookmarksOfBook(userId, bookName, page, size);
+            response.put("success", true);
+            response.put("bookName", bookName);
+            response.put("bookmarks", result.get("list"));
+            response.put("totalElements", result.get("totalElements"));
+            response.put("totalPages", result.get("totalPages"));
+            response.put("currentPage", page);
+            response.put("timestamp", System.currentTimeMillis());
+
+        } catch (Exception e) {
+            log.error("Failed to get book bookmarks", e);
+            response.put("success", false);
+            response.put("error", "Failed to retrieve bookmarks");
+            response.put("timestamp", System.currentTimeMillis());
+        }
 
-            if (page < 0) page = 0;
-            if (page >= totalPages && totalPages > 0) page = totalPages - 1;
+        return response;
+    }
 
-            List<Map<String, Object>> pageGroups = new ArrayList<>();
-            int pageBookmarkCount = 0;
-            if (totalPages > 0) {
-                Map<String, Integer> pageRange = pageMap.get(page);
-                int startIdx = pageRange.get("startGroup");
-                int endIdx = pageRange.get("endGroup");
-                for (int i = startIdx; i <= endIdx; i++) {
-                    pageGroups.add(allGroups.get(i));
-                    pageBookmarkCount += (int) allGroups.get(i).get("count");
-                }
+    /**
+     * 阅读页滚动时上报进度，只写内存，由 ReadingProgressService 定时落库。
+     * 用户身份取自签名过的 initData，请求体中的 userId 不作数；只接受目录中存在的书名
+     */
+    @PostMapping("/progress")
+    public ResponseEntity<Map<String, Object>> reportProgress(@RequestHeader(value = INIT_DATA_HEADER, required = false) String initData,
+                                                              @RequestBody ProgressRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", System.currentTimeMillis());
+
+        Long userId = initDataVerifier.verify(initData);
+        if (userId == null) {
+            response.put("success", false);
+            response.put("error", "Unauthorized");
+            return ResponseEntity.status(401).body(response);
+        }
+        if (StringUtils.isBlank(request.getBookName()) || StringUtils.isBlank(request.getUrl())) {
+            response.put("success", false);
+            response.put("error", "Incomplete progress data");
+            return ResponseEntity.ok(response);
+        }
+        if (!bookCatalogCache.hasTitle(request.getBookName())) {
+            response.put("success", false);
+            response.put("error", "Book not found");
+            return ResponseEntity.ok(response);
+        }
+
+        boolean accepted = readingProgressService.update(new ReadingProgressService.Progress(
+                userId, request.getBookName(), request.getChapterTitle(), request.getUrl(),
+                request.getPosition(), request.getProgress(),
+                request.getTimestamp() != null ? request.getTimestamp() : 0L));
+        response.put("success", true);
+        response.put("accepted", accepted);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/progress/continue")
+    public Map<String, Object> continueReading(Long userId, @RequestParam(defaultValue = "3") int limit) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (userId == null) {
+                response.put("success", false);
+                response.put("error", "User ID is required");
+                response.put("timestamp", System.currentTimeMillis());
+                return response;
             }
 
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (ReadingProgressService.Progress p : readingProgressService.getRecent(userId, Math.min(limit, 20))) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("bookName", p.bookName());
+                item.put("chapterTitle", p.chapterTitle());
+                item.put("url", p.url());
+                item.put("position", p.position());
+                item.put("progress", p.progress());
+                item.put("updateTime", p.timestamp());
+                list.add(item);
+            }
             response.put("success", true);
-            response.put("totalBookmarks", totalBookmarks);
-            response.put("totalPages", totalPages);
-            response.put("currentPage", page);
-            response.put("pageSize", size);
-            response.put("pageBookmarkCount", pageBookmarkCount);
-            response.put("groups", pageGroups);
+            response.put("list", list);
             response.put("timestamp", System.currentTimeMillis());
 
         } catch (Exception e) {
-            log.error("Failed to get user bookmarks", e);
+            log.error("Failed to get reading progress", e);
             response.put("success", false);
-            response.put("error", "Failed to retrieve bookmarks");
+            response.put("error", "Failed to retrieve reading progress");
             response.put("timestamp", System.currentTimeMillis());
         }
 
@@ -392,7 +512,7 @@ public class MiniAppController {
             response.put("success", true);
             response.put("count", result.get("totalElements"));
             response.put("totalPages", result.get("totalPages"));
-            response.put("currentPage", page);
+            response.put("currentPage", Math.max(page, 0));
             response.put("pages", result.get("list"));
 
         } catch (Exception e) {
@@ -404,27 +524,6 @@ public class MiniAppController {
     }
 
 
-    private static @NonNull List<Map<String, Object>> getAllGroups(Map<String, List<BookmarkService.BookmarkInfo>> bookGroups) {
-        List<Map<String, Object>> allGroups = new ArrayList<>();
-        for (Map.Entry<String, List<BookmarkService.BookmarkInfo>> entry : bookGroups.entrySet()) {
-            Map<String, Object> group = new LinkedHashMap<>();
-            group.put("bookName", entry.getKey());
-
-            List<Map<String, String>> groupBookmarks = new ArrayList<>();
-            for (BookmarkService.BookmarkInfo bookmark : entry.getValue()) {
-                Map<String, String> bookmarkMap = new LinkedHashMap<>();
-                bookmarkMap.put("bookName", bookmark.getBookName());
-                bookmarkMap.put("chapterTitle", bookmark.getChapterTitle());
-                bookmarkMap.put("url", bookmark.getUrl());
-                groupBookmarks.add(bookmarkMap);
-            }
-            group.put("bookmarks", groupBookmarks);
-            group.put("count", groupBookmarks.size());
-            allGroups.add(group);
-        }
-        return allGroups;
-    }
-
     @PostMapping("/books/rename")
     public ResponseEntity<Map<String, Object>> renameBook(
             @RequestParam String userId,
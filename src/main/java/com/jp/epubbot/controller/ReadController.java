@@ -1,6 +1,6 @@
 package com.jp.epubbot.controller;
 
-import com.jp.epubbot.entity.BookmarkToken;
+import com.jp.epubbot.entity.Book;
 import com.jp.epubbot.service.BookmarkService;
 import com.jp.epubbot.service.LocalBookService;
 import lombok.RequiredArgsConstructor;
@@ -35,14 +35,13 @@ public class ReadController {
         int totalPages = bookmarkService.getTotalPages(bookId);
         model.addAttribute("totalPages", totalPages);
 
-        String nextContent = localBookService.getChapter(bookId, pageIndex + 1);
-        if (nextContent != null) {
+        if (localBookService.hasChapter(bookId, pageIndex + 1)) {
             model.addAttribute("nextPageUrl", "/read/" + bookId + "/" + (pageIndex + 1));
         }
 
         String token = bookmarkService.findTokenByPage(bookId, pageIndex);
 
-        BookmarkToken first = bookmarkService.findFirstByUrlContaining(bookId);
+        Book book = bookmarkService.findBookById(bookId);
 
         model.addAttribute("bookmarkToken", token);
         model.addAttribute("botUsername", botUsername);
@@ -53,7 +52,8 @@ public class ReadController {
         String bookmarkLink = "https://t.me/" + botUsername + "?start=" + deepLinkParam;
         model.addAttribute("bookmarkLink", bookmarkLink);
 
-        String name = first.getBookName();
+        String name = book != null ? book.getTitle() : null;
+        model.addAttribute("bookName", name);
         model.addAttribute("title", (name != null && name.length() > 10) ? name.substring(0, 10) + "..." : name);
 
         return "read";
@@ -0,0 +1,54 @@
+package com.jp.epubbot.controller;
+
+import com.jp.epubbot.service.BookBot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Webhook 模式下接收 Telegram 推送的更新。
+ * 只做校验和入队，立即返回 200；排队已满时返回 503，由 Telegram 稍后重投。
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+
+    private final BookBot bookBot;
+
+    @Value("${telegram.bot.webhook.secret-token:}")
+    private String secretToken;
+
+    @PostMapping("${telegram.bot.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> receive(@RequestHeader(value = "X-Telegram-Bot-Api-Secret-Token", required = false) String token,
+                                        @RequestBody Update update) {
+        if (!secretMatches(token)) {
+            log.warn("webhook 密钥校验失败，忽略更新: {}", update.getUpdateId());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!bookBot.dispatch(update)) {
+            log.warn("更新排队已满，请求 Telegram 重投: {}", update.getUpdateId());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    private boolean secretMatches(String token) {
+        // 未配置密钥时拒绝所有请求（启动时 webhookRegistrar 已要求配置）
+        return StringUtils.isNotEmpty(secretToken) && token != null && MessageDigest.isEqual(
+                secretToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,37 @@
+package com.jp.epubbot.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 书籍目录，一本书一行
+ */
+@Data
+@Entity
+@Table(name = "books", indexes = {
+        @Index(name = "idx_books_title_id", columnList = "title, bookId")
+})
+public class Book {
+    @Id
+    private String bookId;
+
+    private String title;
+    private Integer pageCount;
+
+    @Enumerated(EnumType.STRING)
+    private StorageKind storageKind;
+
+    private String firstPageUrl;
+
+    @Column(name = "create_time", updatable = false)
+    private LocalDateTime createTime;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createTime == null) {
+            createTime = LocalDateTime.now();
+        }
+    }
+}
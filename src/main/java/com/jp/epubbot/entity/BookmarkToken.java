@@ -14,7 +14,8 @@ import lombok.Data;
 @Entity
 @Table(name = "bookmark_tokens", indexes = {
         @Index(name = "idx_token", columnList = "token"),
-        @Index(name = "idx_book_name", columnList = "bookName") // 用于搜索书籍列表
+        @Index(name = "idx_book_name", columnList = "bookName"), // 用于搜索书籍列表
+        @Index(name = "idx_book_page", columnList = "bookId, pageIndex") // 阅读页按 (书, 页码) 定位
 })
 public class BookmarkToken {
     @Id
@@ -23,4 +24,7 @@ public class BookmarkToken {
     private String bookName;
     private String chapterTitle;
     private String url;
-}
\ No newline at end of file
+
+    private String bookId;
+    private Integer pageIndex;
+}
@@ -0,0 +1,54 @@
+package com.jp.epubbot.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 删除书籍的后台任务：数据库记录已在提交任务时删除，这里跟踪存储文件的清理进度
+ */
+@Data
+@Entity
+@Table(name = "deletion_jobs", indexes = {
+        @Index(name = "idx_deletion_jobs_status", columnList = "status")
+})
+public class DeletionJob {
+
+    public enum Status {
+        PENDING, RUNNING, DONE, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String bookId;
+    private String bookName;
+
+    @Enumerated(EnumType.STRING)
+    private StorageKind storageKind;
+
+    private String firstPageUrl;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private Long deletedObjects;
+    private Integer attempts;
+    private String lastError;
+
+    @Column(name = "create_time", updatable = false)
+    private LocalDateTime createTime;
+
+    private LocalDateTime updateTime;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        if (createTime == null) {
+            createTime = LocalDateTime.now();
+        }
+        updateTime = LocalDateTime.now();
+    }
+}
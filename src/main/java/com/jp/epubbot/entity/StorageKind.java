@@ -0,0 +1,19 @@
+package com.jp.epubbot.entity;
+
+/**
+ * 书籍页面的存放位置
+ */
+public enum StorageKind {
+    /**
+     * 本地 data/books 目录，通过 /read/{bookId}/{page} 访问
+     */
+    LOCAL,
+    /**
+     * Cloudflare R2，通过 {public-domain}/books/{bookId}/{page}.html 访问
+     */
+    R2,
+    /**
+     * 进程内存，仅用于测试与压测，重启后丢失
+     */
+    MEMORY
+}
@@ -12,7 +12,9 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Table(name = "user_bookmarks", indexes = {
-        @Index(name = "idx_user_id", columnList = "userId")
+        @Index(name = "idx_user_id", columnList = "userId"),
+        @Index(name = "idx_user_book_time", columnList = "userId, bookName, updateTime"),
+        @Index(name = "idx_user_time_id", columnList = "userId, updateTime, id")
 })
 public class UserBookmark {
     @Id
@@ -0,0 +1,14 @@
+package com.jp.epubbot.event;
+
+/**
+ * 书籍目录变化事件：入库、重命名、删除后发布，用于让缓存失效
+ *
+ * @param bookId 书籍 ID，旧数据找不到目录记录时可能为 null
+ * @param title  变化后的书名（删除时为被删除的书名）
+ */
+public record BookChangedEvent(Type type, String bookId, String title) {
+
+    public enum Type {
+        CREATED, RENAMED, DELETED
+    }
+}
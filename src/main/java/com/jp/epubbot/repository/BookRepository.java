@@ -0,0 +1,55 @@
+package com.jp.epubbot.repository;
+
+import com.jp.epubbot.entity.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface BookRepository extends JpaRepository<Book, String> {
+
+    Book findFirstByTitle(String title);
+
+    boolean existsByTitle(String title);
+
+    List<Book> findAllByOrderByTitleAsc();
+
+    /**
+     * 按 (title, book_id) 排序的一页，offset 分页用
+     */
+    List<Book> findAllByOrderByTitleAscBookIdAsc(Pageable pageable);
+
+    /**
+     * 键集分页：取 (title, book_id) 之后的 limit 条，直接走 idx_books_title_id，与所在页数无关
+     */
+    @Query(value = "SELECT * FROM books WHERE (title, book_id) > (:title, :bookId) " +
+            "ORDER BY title, book_id LIMIT :limit", nativeQuery = true)
+    List<Book> findPageAfter(@Param("title") String title, @Param("bookId") String bookId, @Param("limit") int limit);
+
+    /**
+     * 以某本书为锚点的键集分页，锚点的 (title, book_id) 在子查询中按主键取出，
+     * 回调参数里只需带 bookId
+     */
+    @Query(value = "SELECT * FROM books WHERE (title, book_id) > " +
+            "(SELECT title, book_id FROM books WHERE book_id = :bookId) " +
+            "ORDER BY title, book_id LIMIT :limit", nativeQuery = true)
+    List<Book> findPageAfterBook(@Param("bookId") String bookId, @Param("limit") int limit);
+
+    /**
+     * 锚点之前的 limit 条，倒序返回，调用方需要反转
+     */
+    @Query(value = "SELECT * FROM books WHERE (title, book_id) < " +
+            "(SELECT title, book_id FROM books WHERE book_id = :bookId) " +
+            "ORDER BY title DESC, book_id DESC LIMIT :limit", nativeQuery = true)
+    List<Book> findPageBeforeBook(@Param("bookId") String bookId, @Param("limit") int limit);
+
+    /**
+     * 旧版本建过的单列书名索引，已被 (title, book_id) 覆盖；ddl-auto=update 不会删除多余的索引
+     */
+    @Modifying
+    @Query(value = "DROP INDEX IF EXISTS idx_books_title", nativeQuery = true)
+    void dropTitleIndex();
+}
@@ -17,37 +17,43 @@ import java.util.List;
 
 public interface BookmarkTokenRepository extends JpaRepository<BookmarkToken, String> {
 
-    @Query("SELECT b FROM BookmarkToken b WHERE b.chapterTitle LIKE %:search% OR b.bookName LIKE %:search%")
-    List<BookmarkToken> searchBooks(String search);
-
-    // 获取所有去重后的书籍列表, 只查第一页）
-    @Query("SELECT DISTINCT b FROM BookmarkToken b WHERE b.chapterTitle LIKE '%(1)%'")
-    List<BookmarkToken> findAllFirstChapters();
-
     @Modifying
     @Query("DELETE FROM BookmarkToken where bookName = :bookName")
     void deleteByBookName(String bookName);
 
-    @Query("SELECT b FROM BookmarkToken b WHERE (b.url LIKE %:path1% OR b.url LIKE %:path2%)")
-    List<BookmarkToken> findByBookIdDual(@Param("path1") String path1, @Param("path2") String path2);
-
-    @Query("SELECT b FROM BookmarkToken b WHERE b.bookName = :bookName AND b.chapterTitle LIKE '%(1)%'")
-    BookmarkToken findFirstBookByBookName(String bookName);
+    @Modifying
+    @Query("DELETE FROM BookmarkToken where bookId = :bookId")
+    void deleteByBookId(String bookId);
 
-    BookmarkToken findFirstByBookName(String bookName);
+    BookmarkToken findFirstByBookIdAndPageIndex(String bookId, Integer pageIndex);
 
-    @Query("SELECT COUNT(b) FROM BookmarkToken b WHERE b.url LIKE %:path1% OR b.url LIKE %:path2%")
-    int countByBookIdDual(@Param("path1") String path1, @Param("path2") String path2);
+    int countByBookId(String bookId);
 
-    @Query("SELECT b FROM BookmarkToken b WHERE b.url LIKE %:path1% OR b.url LIKE %:path2%")
-    Page<BookmarkToken> findByBookIdDual(@Param("path1") String path1, @Param("path2") String path2, Pageable pageable);
+    Page<BookmarkToken> findByBookIdOrderByPageIndexAsc(String bookId, Pageable pageable);
 
     boolean existsByBookName(String bookName);
 
+    List<BookmarkToken> findAllByBookName(String bookName);
+
+    // 迁移用：按主键顺序分批取出尚未回填 bookId 的旧数据
+    List<BookmarkToken> findByBookIdIsNullAndTokenGreaterThanOrderByTokenAsc(String token, Pageable pageable);
+
+    // 迁移用：已回填 bookId 但在 books 表中还没有记录的书籍 -> [bookId, bookName, pageCount]
+    @Query("SELECT b.bookId, MIN(b.bookName), COUNT(b) FROM BookmarkToken b " +
+            "WHERE b.bookId IS NOT NULL AND b.bookId NOT IN (SELECT k.bookId FROM Book k) GROUP BY b.bookId")
+    List<Object[]> findUncatalogedBooks();
+
     @Modifying
     @Query("UPDATE BookmarkToken b SET b.bookName = :newName WHERE b.bookName = :oldName")
     int updateBookName(@Param("oldName") String oldName, @Param("newName") String newName);
 
-    List<BookmarkToken> findAllByBookName(String bookName);
+    /**
+     * 旧数据的页面标题形如 "书名 (12)"，把书名前缀一并替换
+     */
+    @Modifying
+    @Query("UPDATE BookmarkToken b SET b.bookName = :newName, " +
+            "b.chapterTitle = CONCAT(:newName, SUBSTRING(b.chapterTitle, LENGTH(:oldName) + 1)) " +
+            "WHERE b.bookName = :oldName AND b.chapterTitle LIKE CONCAT(:oldName, '%')")
+    int renameChapterTitles(@Param("oldName") String oldName, @Param("newName") String newName);
 
-}
\ No newline at end of file
+}
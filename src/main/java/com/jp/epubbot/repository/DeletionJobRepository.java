@@ -0,0 +1,11 @@
+package com.jp.epubbot.repository;
+
+import com.jp.epubbot.entity.DeletionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface DeletionJobRepository extends JpaRepository<DeletionJob, Long> {
+    List<DeletionJob> findByStatusInOrderByIdAsc(Collection<DeletionJob.Status> statuses);
+}
@@ -1,8 +1,15 @@
 package com.jp.epubbot.repository;
 
 import com.jp.epubbot.entity.UserBookmark;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -14,5 +21,76 @@ public interface UserBookmarkRepository extends JpaRepository<UserBookmark, Long
     List<UserBookmark> findByUserId(Long userId);
     void deleteByUserId(Long userId);
     void deleteByUserIdAndUrl(Long userId, String url);
-    List<UserBookmark> findByUserIdOrderByUpdateTimeDesc(Long userId);
-}
\ No newline at end of file
+
+    /**
+     * 书签列表第一页，按最近更新排序，依赖 idx_user_time_id
+     */
+    List<UserBookmark> findByUserIdOrderByUpdateTimeDescIdDesc(Long userId, Pageable pageable);
+
+    /**
+     * 以某条书签为锚点的下一页（更早的书签），锚点按主键在子查询中取出
+     */
+    @Query(value = "SELECT * FROM user_bookmarks WHERE user_id = :userId AND (update_time, id) < " +
+            "(SELECT update_time, id FROM user_bookmarks WHERE id = :id AND user_id = :userId) " +
+            "ORDER BY update_time DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<UserBookmark> findPageAfterBookmark(@Param("userId") Long userId, @Param("id") Long id, @Param("limit") int limit);
+
+    /**
+     * 锚点之前（更新的书签）的 limit 条，倒序返回，调用方需要反转
+     */
+    @Query(value = "SELECT * FROM user_bookmarks WHERE user_id = :userId AND (update_time, id) > " +
+            "(SELECT update_time, id FROM user_bookmarks WHERE id = :id AND user_id = :userId) " +
+            "ORDER BY update_time ASC, id ASC LIMIT :limit", nativeQuery = true)
+    List<UserBookmark> findPageBeforeBookmark(@Param("userId") Long userId, @Param("id") Long id, @Param("limit") int limit);
+
+    long countByUserId(Long userId);
+
+    /**
+     * 按书分组的一页：[bookName, 书签数, 最近更新时间]，最近读过的书在前
+     */
+    @Query(value = "SELECT b.bookName, COUNT(b), MAX(b.updateTime) FROM UserBookmark b WHERE b.userId = :userId " +
+            "GROUP BY b.bookName ORDER BY MAX(b.updateTime) DESC, b.bookName ASC",
+            countQuery = "SELECT COUNT(DISTINCT COALESCE(b.bookName, '')) FROM UserBookmark b WHERE b.userId = :userId")
+    Page<Object[]> findBookGroups(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * 指定几本书各自最近的 limit 条书签，依赖 idx_user_book_time
+     */
+    @Query(value = "SELECT id, user_id, book_name, chapter_title, url, create_time, update_time FROM (" +
+            "SELECT ub.*, ROW_NUMBER() OVER (PARTITION BY ub.book_name ORDER BY ub.update_time DESC, ub.id DESC) AS rn " +
+            "FROM user_bookmarks ub WHERE ub.user_id = :userId AND ub.book_name IN (:bookNames)" +
+            ") WHERE rn <= :limit ORDER BY book_name, update_time DESC, id DESC", nativeQuery = true)
+    List<UserBookmark> findLatestPerBook(@Param("userId") Long userId,
+                                         @Param("bookNames") Collection<String> bookNames,
+                                         @Param("limit") int limit);
+
+    Page<UserBookmark> findByUserIdAndBookNameOrderByUpdateTimeDescIdDesc(Long userId, String bookName, Pageable pageable);
+
+    Page<UserBookmark> findByUserIdAndBookNameIsNullOrderByUpdateTimeDescIdDesc(Long userId, Pageable pageable);
+
+    /**
+     * 按 (user_id, url) 幂等写入，依赖唯一索引 ux_user_bookmarks_user_url
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_bookmarks (user_id, book_name, chapter_title, url, create_time, update_time) " +
+            "VALUES (:userId, :bookName, :chapterTitle, :url, :time, :time) " +
+            "ON CONFLICT (user_id, url) DO UPDATE SET book_name = excluded.book_name, " +
+            "chapter_title = excluded.chapter_title, update_time = excluded.update_time", nativeQuery = true)
+    int upsert(@Param("userId") Long userId,
+               @Param("bookName") String bookName,
+               @Param("chapterTitle") String chapterTitle,
+               @Param("url") String url,
+               @Param("time") LocalDateTime time);
+
+    /**
+     * 同一用户同一 url 只保留最新的一行
+     */
+    @Modifying
+    @Query(value = "DELETE FROM user_bookmarks WHERE id NOT IN " +
+            "(SELECT MAX(id) FROM user_bookmarks GROUP BY user_id, url)", nativeQuery = true)
+    int deleteDuplicates();
+
+    @Modifying
+    @Query(value = "CREATE UNIQUE INDEX IF NOT EXISTS ux_user_bookmarks_user_url ON user_bookmarks (user_id, url)", nativeQuery = true)
+    void createUserUrlUniqueIndex();
+}
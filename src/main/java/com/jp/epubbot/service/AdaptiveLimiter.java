@@ -0,0 +1,141 @@
+package com.jp.epubbot.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD 自适应并发限制：延迟平稳且并发已接近上限时，每轮往返把上限加一；
+ * 遇到限流（429 / 503 / 超时）时把上限乘以 backoffRatio，同一个冷却期内只退让一次，
+ * 避免同一波失败把上限一路压到底。
+ */
+public class AdaptiveLimiter {
+
+    public enum Outcome {
+        SUCCESS,
+        // 限流或超时，需要退让
+        DROPPED,
+        // 与负载无关的错误（404、参数错误等），不调整上限
+        IGNORED
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long cooldownNanos;
+
+    private double limit;
+    private int inFlight;
+    // 成功请求延迟的指数平均，作为"平稳"的基线
+    private double baselineNanos;
+    private long lastDropNanos;
+
+    private final long[] samples;
+    private int sampleCount;
+    private int sampleNext;
+
+    private long successCount;
+    private long dropCount;
+    private long errorCount;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                           double latencyTolerance, int window) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("并发上限配置无效: min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.cooldownNanos = TimeUnit.SECONDS.toNanos(1);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.samples = new long[Math.max(16, window)];
+    }
+
+    /**
+     * 阻塞直到有空闲的并发名额
+     *
+     * @return 开始时间，释放时传回
+     */
+    public synchronized long acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+        return System.nanoTime();
+    }
+
+    public synchronized void release(long startNanos, Outcome outcome) {
+        long now = System.nanoTime();
+        long latency = now - startNanos;
+        boolean saturated = inFlight >= (int) limit / 2;
+        inFlight--;
+
+        switch (outcome) {
+            case SUCCESS -> {
+                successCount++;
+                record(latency);
+                if (baselineNanos == 0) {
+                    baselineNanos = latency;
+                }
+                if (latency <= baselineNanos * latencyTolerance && saturated) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+                // 延迟下降时基线快速跟随，上升时缓慢跟随，避免基线被拥塞拖高
+                double alpha = latency < baselineNanos ? 0.1 : 0.005;
+                baselineNanos = baselineNanos * (1 - alpha) + latency * alpha;
+            }
+            case DROPPED -> {
+                dropCount++;
+                if (now - lastDropNanos >= cooldownNanos) {
+                    lastDropNanos = now;
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                }
+            }
+            case IGNORED -> errorCount++;
+        }
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return 当前上限、并发数、计数以及最近窗口内成功请求的延迟分位数（毫秒）
+     */
+    public synchronized Map<String, Object> stats() {
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", (int) limit);
+        stats.put("inFlight", inFlight);
+        stats.put("success", successCount);
+        stats.put("dropped", dropCount);
+        stats.put("errors", errorCount);
+        stats.put("latencyP50Ms", percentileMillis(sorted, 0.50));
+        stats.put("latencyP95Ms", percentileMillis(sorted, 0.95));
+        stats.put("latencyP99Ms", percentileMillis(sorted, 0.99));
+        return stats;
+    }
+
+    private void record(long latency) {
+        samples[sampleNext] = latency;
+        sampleNext = (sampleNext + 1) % samples.length;
+        sampleCount = Math.min(sampleCount + 1, samples.length);
+    }
+
+    private static double percentileMillis(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1_000_000.0;
+    }
+}
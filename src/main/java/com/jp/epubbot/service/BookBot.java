@@ -1,14 +1,20 @@
 package com.jp.epubbot.service;
 
+import com.jp.epubbot.entity.Book;
+import com.jp.epubbot.entity.UserBookmark;
 import io.micrometer.common.util.StringUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.GetMe;
 import org.telegram.telegrambots.meta.api.methods.commands.SetMyCommands;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.methods.menubutton.SetChatMenuButton;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.menubutton.MenuButtonWebApp;
 import org.telegram.telegrambots.meta.api.objects.webapp.WebAppInfo;
 import org.telegram.telegrambots.meta.api.objects.Document;
@@ -33,6 +39,10 @@ public class BookBot extends TelegramLongPollingBot {
 
     private final BookParseService bookParseService;
     private final BookmarkService bookmarkService;
+    private final UpdateDispatcher updateDispatcher;
+    private final TelegramOutbox outbox;
+    private final IngestProgressReporter progressReporter;
+    private final RateLimiter rateLimiter;
     private final String botUsername;
     private final String webappUrl;
     private final Set<Long> processingUsers = ConcurrentHashMap.newKeySet();
@@ -40,12 +50,26 @@ public class BookBot extends TelegramLongPollingBot {
 
     private final String baseUrl;
 
+    // /list 与 /bookmarks 每页条数
+    private static final int LIST_PAGE_SIZE = 10;
+    // 翻页回调："bl|bm:n|p:位置:锚点"，Telegram 限制 callback_data 不超过 64 字节
+    private static final String CB_BOOKS = "bl";
+    private static final String CB_BOOKMARKS = "bm";
+    private static final String CB_NOOP = "noop";
+
     public BookBot(DefaultBotOptions options, String botToken, String botUsername,
-                   BookParseService bookParseService, BookmarkService bookmarkService, String adminList, String webappUrl) {
+                   BookParseService bookParseService, BookmarkService bookmarkService, UpdateDispatcher updateDispatcher,
+                   TelegramOutbox outbox, IngestProgressReporter progressReporter,
+                   RateLimiter rateLimiter, String adminList, String webappUrl) {
         super(options, botToken);
         this.botUsername = botUsername;
         this.bookParseService = bookParseService;
         this.bookmarkService = bookmarkService;
+        this.updateDispatcher = updateDispatcher;
+        this.outbox = outbox;
+        this.progressReporter = progressReporter;
+        this.rateLimiter = rateLimiter;
+        outbox.bind(this);
         this.webappUrl = webappUrl;
         if (StringUtils.isNotEmpty(adminList)) {
             this.admin = Arrays.stream(adminList.split(",")).toList();
@@ -67,8 +91,53 @@ public class BookBot extends TelegramLongPollingBot {
         return botUsername;
     }
 
+    /**
+     * 长轮询收到的更新交给分发器并行处理；分发器排队已满时在轮询线程里直接处理，
+     * 拖慢下一次拉取，起到背压作用
+     */
     @Override
     public void onUpdateReceived(Update update) {
+        if (!dispatch(update)) {
+            log.warn("更新排队已满，在轮询线程中处理: {}", update.getUpdateId());
+            handleUpdate(update);
+        }
+    }
+
+    /**
+     * 命令和按钮回调按用户限流后交给分发器；被限流的更新直接丢弃并视为已处理。
+     * 文件上传不限流：只有管理员能上传，且已由 processingUsers 控制同时处理的数量
+     *
+     * @return false 表示分发器排队已满
+     */
+    public boolean dispatch(Update update) {
+        User from = update.hasMessage() && update.getMessage().isCommand() ? update.getMessage().getFrom()
+                : update.hasCallbackQuery() ? update.getCallbackQuery().getFrom() : null;
+        if (from != null && !rateLimiter.tryAcquire(RateLimiter.Policy.BOT, String.valueOf(from.getId()))) {
+            log.debug("用户 {} 操作过于频繁，忽略更新 {}", from.getId(), update.getUpdateId());
+            notifyRateLimited(update, from.getId());
+            return true;
+        }
+        return updateDispatcher.dispatch(update, this::handleUpdate);
+    }
+
+    private void notifyRateLimited(Update update, Long userId) {
+        if (update.hasCallbackQuery()) {
+            // 按钮回调必须应答，否则客户端会一直转圈
+            outbox.send(userId, AnswerCallbackQuery.builder()
+                            .callbackQueryId(update.getCallbackQuery().getId())
+                            .text("操作太频繁，请稍后再试")
+                            .build())
+                    .exceptionally(e -> null);
+        } else if (rateLimiter.tryAcquire(RateLimiter.Policy.NOTICE, String.valueOf(userId))) {
+            sendText(update.getMessage().getChatId(), "⚠️ 操作太频繁，请稍后再试。");
+        }
+    }
+
+    public void handleUpdate(Update update) {
+        if (update.hasCallbackQuery()) {
+            handleCallback(update.getCallbackQuery());
+            return;
+        }
         if (update.hasMessage()) {
             Long chatId = update.getMessage().getChatId();
             String text = update.getMessage().getText();
@@ -93,12 +162,12 @@ public class BookBot extends TelegramLongPollingBot {
                 if (text.startsWith("/start")) {
                     handleStartCommand(chatId, text);
                 } else if (text.equals("/bookmarks")) {
-                    handleListBookmarks(chatId);
+                    showBookmarksPage(chatId, null, null, false, 0);
                 } else if (text.equals("/clear_bookmarks")) {
                     bookmarkService.clearBookmarks(chatId);
                     sendText(chatId, "🗑️ 书签已清空。");
                 } else if (text.equals("/list")) {
-                    sendTextAsMarkdown(chatId, bookmarkService.findAllBooks());
+                    showBooksPage(chatId, null, null, false, 0);
                 } else {
                     sendText(chatId, "[" + text + "]为不支持的命令 | Unsupported command");
                 }
@@ -108,11 +177,7 @@ public class BookBot extends TelegramLongPollingBot {
     }
 
     private void deleteMessage(long chatId, int messageId) {
-        try {
-            execute(new DeleteMessage(String.valueOf(chatId), messageId));
-        } catch (TelegramApiException e) {
-            log.error("delete message error: [{}]", e.toString());
-        }
+        outbox.delete(chatId, messageId);
     }
 
     private void handleStartCommand(Long chatId, String text) {
@@ -132,26 +197,121 @@ public class BookBot extends TelegramLongPollingBot {
         }
     }
 
-    private void handleListBookmarks(Long chatId) {
-        List<BookmarkService.BookmarkInfo> bookmarks = bookmarkService.getUserBookmarks(chatId);
-        if (bookmarks.isEmpty()) {
-            sendText(chatId, "📭 你还没有保存任何书签。");
+    private void handleCallback(CallbackQuery query) {
+        outbox.send(query.getFrom().getId(), new AnswerCallbackQuery(query.getId()))
+                .exceptionally(e -> null);
+        String data = query.getData();
+        if (data == null || query.getMessage() == null || CB_NOOP.equals(data)) {
+            return;
+        }
+        String[] parts = data.split(":", 4);
+        if (parts.length != 4) {
+            return;
+        }
+        Long chatId = query.getMessage().getChatId();
+        Integer messageId = query.getMessage().getMessageId();
+        boolean before = "p".equals(parts[1]);
+        long position;
+        try {
+            position = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (CB_BOOKS.equals(parts[0])) {
+            showBooksPage(chatId, messageId, parts[3], before, position);
+        } else if (CB_BOOKMARKS.equals(parts[0])) {
+            try {
+                showBookmarksPage(chatId, messageId, Long.valueOf(parts[3]), before, position);
+            } catch (NumberFormatException ignored) {
+                // 无效的回调参数
+            }
+        }
+    }
+
+    /**
+     * 书籍列表的一页；messageId 为空时发新消息，否则原地编辑
+     */
+    private void showBooksPage(Long chatId, Integer messageId, String anchor, boolean before, long position) {
+        BookmarkService.KeysetPage<Book> page =
+                bookmarkService.pageBooks(anchor, before, position, LIST_PAGE_SIZE);
+        if (page.items().isEmpty()) {
+            showPage(chatId, messageId, "暂无书籍数据。", null);
             return;
         }
+        StringBuilder sb = new StringBuilder("🔖 **书籍列表:**\n\n");
+        for (int i = 0; i < page.items().size(); i++) {
+            Book book = page.items().get(i);
+            sb.append(page.position() + i + 1)
+                    .append(". [").append(book.getTitle()).append("](").append(book.getFirstPageUrl()).append(")\n");
+        }
+        String first = page.items().get(0).getBookId();
+        String last = page.items().get(page.items().size() - 1).getBookId();
+        showPage(chatId, messageId, sb.toString(), pager(CB_BOOKS, page, first, last));
+    }
 
+    private void showBookmarksPage(Long chatId, Integer messageId, Long anchor, boolean before, long position) {
+        BookmarkService.KeysetPage<UserBookmark> page =
+                bookmarkService.pageUserBookmarks(chatId, anchor, before, position, LIST_PAGE_SIZE);
+        if (page.items().isEmpty()) {
+            showPage(chatId, messageId, "📭 你还没有保存任何书签。", null);
+            return;
+        }
         StringBuilder sb = new StringBuilder("🔖 **我的书签**\n\n");
-        for (int i = 0; i < bookmarks.size(); i++) {
-            BookmarkService.BookmarkInfo bm = bookmarks.get(i);
-            sb.append(i + 1).append(". [").append(bm.getChapterTitle()).append("](").append(bm.getUrl()).append(")\n");
+        for (int i = 0; i < page.items().size(); i++) {
+            UserBookmark bm = page.items().get(i);
+            sb.append(page.position() + i + 1).append(". [").append(bm.getChapterTitle()).append("](").append(bm.getUrl()).append(")\n");
             sb.append("   📖 ").append(bm.getBookName()).append("\n\n");
         }
+        String first = String.valueOf(page.items().get(0).getId());
+        String last = String.valueOf(page.items().get(page.items().size() - 1).getId());
+        showPage(chatId, messageId, sb.toString(), pager(CB_BOOKMARKS, page, first, last));
+    }
 
-        // 简单的长度截断，防止消息过长
-        if (sb.length() > 4000) {
-            sendText(chatId, sb.substring(0, 3500) + "\n... (列表过长，仅显示部分)");
-        } else {
-            sendTextAsMarkdown(chatId, sb.toString());
+    /**
+     * 翻页按钮：上一页以本页第一条为锚点向前取，下一页以最后一条为锚点向后取
+     */
+    private InlineKeyboardMarkup pager(String type, BookmarkService.KeysetPage<?> page, String first, String last) {
+        if (!page.hasPrev() && !page.hasNext()) {
+            return null;
+        }
+        List<InlineKeyboardButton> row = new ArrayList<>();
+        if (page.hasPrev()) {
+            long prevPosition = Math.max(0, page.position() - LIST_PAGE_SIZE);
+            row.add(InlineKeyboardButton.builder().text("◀️ 上一页")
+                    .callbackData(type + ":p:" + prevPosition + ":" + first).build());
         }
+        row.add(InlineKeyboardButton.builder().text("第 " + (page.position() / LIST_PAGE_SIZE + 1) + " 页")
+                .callbackData(CB_NOOP).build());
+        if (page.hasNext()) {
+            long nextPosition = page.position() + page.items().size();
+            row.add(InlineKeyboardButton.builder().text("下一页 ▶️")
+                    .callbackData(type + ":n:" + nextPosition + ":" + last).build());
+        }
+        return InlineKeyboardMarkup.builder().keyboardRow(row).build();
+    }
+
+    private void showPage(Long chatId, Integer messageId, String text, InlineKeyboardMarkup keyboard) {
+        if (messageId == null) {
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText(text);
+            message.setParseMode("Markdown");
+            message.setDisableWebPagePreview(true);
+            message.setReplyMarkup(keyboard);
+            send(chatId, message);
+            return;
+        }
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(chatId);
+        edit.setMessageId(messageId);
+        edit.setText(text);
+        edit.setParseMode("Markdown");
+        edit.setDisableWebPagePreview(true);
+        edit.setReplyMarkup(keyboard);
+        outbox.send(chatId, edit).exceptionally(e -> {
+            log.warn("翻页编辑消息失败: [{}]", e.toString());
+            return null;
+        });
     }
 
     private void handleBookFile(Long chatId, Document doc) {
@@ -160,10 +320,12 @@ public class BookBot extends TelegramLongPollingBot {
             return;
         }
         processingUsers.add(chatId);
-        Message fetchMessage = sendText(chatId, "📚 收到书籍: " + doc.getFileName() + "\n正在处理，请稍候...");
+        String header = "📚 收到书籍: " + doc.getFileName();
+        CompletableFuture<Message> fetchMessage = sendText(chatId, header + "\n正在处理，请稍候...");
 
         CompletableFuture.runAsync(() -> {
-            try {
+            IngestProgress progress = new IngestProgress();
+            try (AutoCloseable ignored = progressReporter.start(chatId, fetchMessage, header, progress)) {
                 org.telegram.telegrambots.meta.api.methods.GetFile getFile = new org.telegram.telegrambots.meta.api.methods.GetFile();
                 getFile.setFileId(doc.getFileId());
                 org.telegram.telegrambots.meta.api.objects.File file = execute(getFile);
@@ -189,15 +351,15 @@ public class BookBot extends TelegramLongPollingBot {
                 }
 
                 log.info("file url: [{}]", fileUrl);
-                try (InputStream in = new URL(fileUrl).openStream()) {
+                try (InputStream in = progress.track(new URL(fileUrl).openStream())) {
                     String fileName = doc.getFileName().toLowerCase();
                     List<String> links;
                     if (fileName.endsWith(".epub")) {
-                        links = bookParseService.processEpub(in, doc.getFileName());
+                        links = bookParseService.processEpub(in, doc.getFileName(), progress);
                     } else if (fileName.endsWith(".txt")) {
-                        links = bookParseService.processTxt(in, doc.getFileName());
+                        links = bookParseService.processTxt(in, doc.getFileName(), progress);
                     } else if (fileName.endsWith(".pdf")) {
-                        links = bookParseService.processPdf(in, doc.getFileName());
+                        links = bookParseService.processPdf(in, doc.getFileName(), progress);
                     } else {
                         throw new IllegalArgumentException("仅支持 EPUB, TXT, PDF 格式");
                     }
@@ -219,8 +381,12 @@ public class BookBot extends TelegramLongPollingBot {
                         message.setText(sb.toString());
                         message.setParseMode("Markdown");
                         message.setDisableWebPagePreview(true);
-                        execute(message);
-                        deleteMessage(chatId, fetchMessage.getMessageId());
+                        send(chatId, message);
+                        fetchMessage.thenAccept(m -> {
+                            if (m != null) {
+                                deleteMessage(chatId, m.getMessageId());
+                            }
+                        });
                     }
                 }
             } catch (Exception e) {
@@ -232,17 +398,21 @@ public class BookBot extends TelegramLongPollingBot {
         });
     }
 
-    private Message sendText(Long chatId, String text) {
+    /**
+     * 经发送队列异步发送，失败时返回 null 而不是异常
+     */
+    private CompletableFuture<Message> send(Long chatId, SendMessage message) {
+        return outbox.send(chatId, message).exceptionally(e -> {
+            log.error("Send failed", e);
+            return null;
+        });
+    }
+
+    private CompletableFuture<Message> sendText(Long chatId, String text) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText(text);
-        Message execute = null;
-        try {
-            execute = execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Send failed", e);
-        }
-        return execute;
+        return send(chatId, message);
     }
 
     private void sendTextAsMarkdown(Long chatId, String text) {
@@ -251,11 +421,7 @@ public class BookBot extends TelegramLongPollingBot {
         message.setText(text);
         message.setParseMode("Markdown");
         message.setDisableWebPagePreview(true);
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Send failed", e);
-        }
+        send(chatId, message);
     }
 
     private void setBotCommands() {
@@ -0,0 +1,161 @@
+package com.jp.epubbot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.jp.epubbot.entity.Book;
+import com.jp.epubbot.event.BookChangedEvent;
+import com.jp.epubbot.repository.BookRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 阅读页与书籍列表的目录缓存。书籍只在入库、重命名、删除时变化，
+ * 通过 {@link BookChangedEvent} 在事务提交后精确失效，TTL 仅作兜底。
+ * 缓存中的实体在多个线程间共享，对外只返回副本，调用方修改不会影响缓存。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookCatalogCache {
+
+    private static final String ALL_BOOKS_KEY = "all";
+
+    private final BookRepository bookRepo;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.cache.book.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.cache.book.ttl:30m}")
+    private Duration ttl;
+
+    private Cache<String, Optional<Book>> booksById;
+    private Cache<String, List<Book>> bookList;
+    private Cache<String, Long> bookCount;
+    private Cache<String, Set<String>> bookTitles;
+
+    @PostConstruct
+    public void init() {
+        booksById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        bookList = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        bookCount = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(ttl)
+                .build();
+        bookTitles = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(ttl)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, booksById, "catalog.books");
+        CaffeineCacheMetrics.monitor(meterRegistry, bookList, "catalog.list");
+    }
+
+    /**
+     * @return 书籍目录记录，不存在时返回 null（不存在也会被缓存，入库事件会将其失效）
+     */
+    public Book getBook(String bookId) {
+        if (bookId == null) {
+            return null;
+        }
+        return booksById.get(bookId, id -> bookRepo.findById(id)).map(BookCatalogCache::copy).orElse(null);
+    }
+
+    /**
+     * @return 按书名排序的全部书籍
+     */
+    public List<Book> getAllBooks() {
+        return cachedBooks().stream()
+                .map(BookCatalogCache::copy)
+                .toList();
+    }
+
+    private List<Book> cachedBooks() {
+        return bookList.get(ALL_BOOKS_KEY, k -> List.copyOf(bookRepo.findAllByOrderByTitleAsc()));
+    }
+
+    /**
+     * @return 目录中是否有这个书名，用于校验客户端上报的书名
+     */
+    public boolean hasTitle(String title) {
+        if (title == null) {
+            return false;
+        }
+        return bookTitles.get(ALL_BOOKS_KEY, k -> cachedBooks().stream()
+                .map(Book::getTitle)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet())).contains(title);
+    }
+
+    private static Book copy(Book source) {
+        Book book = new Book();
+        book.setBookId(source.getBookId());
+        book.setTitle(source.getTitle());
+        book.setPageCount(source.getPageCount());
+        book.setStorageKind(source.getStorageKind());
+        book.setFirstPageUrl(source.getFirstPageUrl());
+        book.setCreateTime(source.getCreateTime());
+        return book;
+    }
+
+    /**
+     * @return 书籍总数，分页接口每次都要用，单独缓存避免重复 count
+     */
+    public long getBookCount() {
+        return bookCount.get(ALL_BOOKS_KEY, k -> bookRepo.count());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        log.debug("书籍目录变化, 清除缓存: {}", event);
+        if (event.bookId() != null) {
+            booksById.invalidate(event.bookId());
+        } else {
+            booksById.invalidateAll();
+        }
+        bookList.invalidateAll();
+        bookCount.invalidateAll();
+        bookTitles.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("books", toMap(booksById.stats(), booksById.estimatedSize()));
+        result.put("bookList", toMap(bookList.stats(), bookList.estimatedSize()));
+        return result;
+    }
+
+    private static Map<String, Object> toMap(CacheStats stats, long size) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", size);
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictionCount", stats.evictionCount());
+        map.put("averageLoadPenaltyMs", stats.averageLoadPenalty() / 1_000_000.0);
+        return map;
+    }
+}
@@ -0,0 +1,115 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.Book;
+import com.jp.epubbot.entity.BookmarkToken;
+import com.jp.epubbot.entity.StorageKind;
+import com.jp.epubbot.event.BookChangedEvent;
+import com.jp.epubbot.repository.BookRepository;
+import com.jp.epubbot.repository.BookmarkTokenRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 启动时回填旧数据：从 url 中解析出 bookId / pageIndex 写入 bookmark_tokens，
+ * 并为每本书补一行 books 记录。分批提交，避免长时间占用 SQLite 写锁。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookCatalogMigration implements ApplicationRunner {
+
+    // 兼容本地 /read/{bookId}/{page} 与 R2 /books/{bookId}/{page}.html 两种地址
+    private static final Pattern PAGE_URL = Pattern.compile("/(read|books)/([^/]+)/(\\d+)(\\.html)?(?:[?#].*)?$");
+
+    private final BookmarkTokenRepository tokenRepo;
+    private final BookRepository bookRepo;
+    private final BookSearchIndex bookSearchIndex;
+    private final SqliteWriter sqliteWriter;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.migration.batch-size:500}")
+    private int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        sqliteWriter.run(bookRepo::dropTitleIndex);
+
+        int backfilled = 0;
+        String lastToken = "";
+        while (true) {
+            final String after = lastToken;
+            List<BookmarkToken> batch = tokenRepo.findByBookIdIsNullAndTokenGreaterThanOrderByTokenAsc(after, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            int updated = sqliteWriter.call(() -> {
+                int n = 0;
+                for (BookmarkToken t : batch) {
+                    PageRef ref = parsePageUrl(t.getUrl());
+                    if (ref == null) {
+                        log.warn("无法从 url 解析 bookId, 跳过: [{}] {}", t.getToken(), t.getUrl());
+                        continue;
+                    }
+                    t.setBookId(ref.bookId());
+                    t.setPageIndex(ref.pageIndex());
+                    n++;
+                }
+                tokenRepo.saveAll(batch);
+                return n;
+            });
+            backfilled += updated;
+            lastToken = batch.get(batch.size() - 1).getToken();
+        }
+
+        List<Object[]> uncataloged = tokenRepo.findUncatalogedBooks();
+        for (Object[] row : uncataloged) {
+            String bookId = (String) row[0];
+            sqliteWriter.run(() -> {
+                BookmarkToken first = tokenRepo.findFirstByBookIdAndPageIndex(bookId, 1);
+                String url = first != null ? first.getUrl() : null;
+
+                Book book = new Book();
+                book.setBookId(bookId);
+                book.setTitle((String) row[1]);
+                book.setPageCount(((Number) row[2]).intValue());
+                book.setStorageKind(url != null && url.contains("/read/") ? StorageKind.LOCAL : StorageKind.R2);
+                book.setFirstPageUrl(url);
+                bookRepo.save(book);
+            });
+        }
+
+        if (backfilled > 0 || !uncataloged.isEmpty()) {
+            log.info("书籍目录迁移完成: 回填 {} 条页面记录, 新建 {} 条书籍记录", backfilled, uncataloged.size());
+            bookSearchIndex.rebuild();
+            eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Type.CREATED, null, null));
+        }
+    }
+
+    public record PageRef(String bookId, int pageIndex) {
+    }
+
+    public static PageRef parsePageUrl(String url) {
+        if (url == null) {
+            return null;
+        }
+        Matcher matcher = PAGE_URL.matcher(url);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return new PageRef(matcher.group(2), Integer.parseInt(matcher.group(3)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
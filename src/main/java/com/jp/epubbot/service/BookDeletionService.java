@@ -0,0 +1,191 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.Book;
+import com.jp.epubbot.entity.DeletionJob;
+import com.jp.epubbot.entity.StorageKind;
+import com.jp.epubbot.event.BookChangedEvent;
+import com.jp.epubbot.repository.BookRepository;
+import com.jp.epubbot.repository.BookmarkTokenRepository;
+import com.jp.epubbot.repository.DeletionJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 两阶段删除书籍：
+ * 第一阶段在一个短写事务里删掉数据库记录并登记删除任务，接口立即返回；
+ * 第二阶段由后台线程清理 R2 / 本地文件，R2 按页并行批量删除，失败按退避重试，
+ * 未完成的任务在应用重启后继续执行。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BookDeletionService implements ApplicationRunner {
+
+    private final BookRepository bookRepo;
+    private final BookmarkTokenRepository tokenRepo;
+    private final DeletionJobRepository jobRepo;
+    private final R2StorageService r2StorageService;
+    private final StorageBackend storageBackend;
+    private final LocalBookService localBookService;
+    private final CloudflareService cloudflareService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SqliteWriter sqliteWriter;
+
+    // R2 同时进行的批量删除请求数
+    @Value("${app.deletion.parallelism:4}")
+    private int parallelism;
+
+    @Value("${app.deletion.max-attempts:5}")
+    private int maxAttempts;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService ioPool;
+
+    // 正在执行的任务已删除的文件数，查询进度时覆盖数据库中的值
+    private final Map<Long, AtomicLong> progress = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "book-deletion"));
+        AtomicInteger seq = new AtomicInteger();
+        ioPool = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                r -> daemon(r, "book-deletion-io-" + seq.incrementAndGet()));
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * 第一阶段：删除数据库记录并登记任务，存储清理交给后台
+     */
+    public DeletionJob submit(String bookName) {
+        Book book = bookRepo.findFirstByTitle(bookName);
+        DeletionJob job = sqliteWriter.call(() -> {
+            DeletionJob j = new DeletionJob();
+            j.setBookName(bookName);
+            j.setStatus(DeletionJob.Status.PENDING);
+            j.setDeletedObjects(0L);
+            j.setAttempts(0);
+            if (book != null) {
+                j.setBookId(book.getBookId());
+                j.setStorageKind(book.getStorageKind());
+                j.setFirstPageUrl(book.getFirstPageUrl());
+                tokenRepo.deleteByBookId(book.getBookId());
+                bookRepo.delete(book);
+            }
+            tokenRepo.deleteByBookName(bookName);
+            eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Type.DELETED,
+                    book != null ? book.getBookId() : null, bookName));
+            return jobRepo.save(j);
+        });
+        log.info("已登记删除任务 #{}: [{}] bookId={}", job.getId(), bookName, job.getBookId());
+        scheduler.execute(() -> run(job.getId()));
+        return job;
+    }
+
+    /**
+     * @return 任务当前状态，运行中的任务带实时删除数
+     */
+    public DeletionJob getJob(Long id) {
+        DeletionJob job = jobRepo.findById(id).orElse(null);
+        AtomicLong live = progress.get(id);
+        if (job != null && live != null) {
+            job.setDeletedObjects(live.get());
+        }
+        return job;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<DeletionJob> unfinished = jobRepo.findByStatusInOrderByIdAsc(
+                List.of(DeletionJob.Status.PENDING, DeletionJob.Status.RUNNING));
+        if (!unfinished.isEmpty()) {
+            log.info("继续执行 {} 个未完成的删除任务", unfinished.size());
+            unfinished.forEach(j -> scheduler.execute(() -> run(j.getId())));
+        }
+    }
+
+    private void run(Long jobId) {
+        DeletionJob job = jobRepo.findById(jobId).orElse(null);
+        if (job == null || job.getStatus() == DeletionJob.Status.DONE || job.getStatus() == DeletionJob.Status.FAILED) {
+            return;
+        }
+        AtomicLong deleted = progress.computeIfAbsent(jobId,
+                id -> new AtomicLong(job.getDeletedObjects() != null ? job.getDeletedObjects() : 0));
+        int attempt = (job.getAttempts() != null ? job.getAttempts() : 0) + 1;
+        update(jobId, j -> {
+            j.setStatus(DeletionJob.Status.RUNNING);
+            j.setAttempts(attempt);
+        });
+
+        try {
+            if (job.getBookId() != null) {
+                if (job.getStorageKind() == StorageKind.LOCAL) {
+                    localBookService.deleteBookDirectory(job.getBookId());
+                } else if (job.getStorageKind() == StorageKind.MEMORY) {
+                    deleted.addAndGet(storageBackend.deletePrefix("books/" + job.getBookId() + "/"));
+                } else {
+                    r2StorageService.deleteFolder("books/" + job.getBookId(), ioPool, maxAttempts, deleted::addAndGet);
+                    cloudflareService.purgeBook(job.getFirstPageUrl(), job.getBookId());
+                }
+            }
+            update(jobId, j -> {
+                j.setStatus(DeletionJob.Status.DONE);
+                j.setDeletedObjects(deleted.get());
+                j.setLastError(null);
+            });
+            progress.remove(jobId);
+            log.info("删除任务 #{} 完成: [{}], 删除文件 {} 个", jobId, job.getBookName(), deleted.get());
+        } catch (Exception e) {
+            boolean giveUp = attempt >= maxAttempts;
+            update(jobId, j -> {
+                j.setStatus(giveUp ? DeletionJob.Status.FAILED : DeletionJob.Status.PENDING);
+                j.setDeletedObjects(deleted.get());
+                j.setLastError(String.valueOf(e.getMessage()));
+            });
+            if (giveUp) {
+                progress.remove(jobId);
+                log.error("删除任务 #{} 多次失败，放弃: [{}]", jobId, job.getBookName(), e);
+            } else {
+                long delay = Math.min(300L, 5L << Math.min(attempt - 1, 6));
+                log.warn("删除任务 #{} 第 {} 次失败, {} 秒后重试: {}", jobId, attempt, delay, e.toString());
+                scheduler.schedule(() -> run(jobId), delay, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private void update(Long jobId, Consumer<DeletionJob> change) {
+        sqliteWriter.run(() -> jobRepo.findById(jobId).ifPresent(j -> {
+            change.accept(j);
+            jobRepo.save(j);
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 未完成的任务保持 PENDING / RUNNING，下次启动继续
+        scheduler.shutdownNow();
+        ioPool.shutdownNow();
+    }
+}
@@ -0,0 +1,102 @@
+package com.jp.epubbot.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 单文件书籍包（只读），整个文件通过 MappedByteBuffer 映射，按页 O(1) 切片。
+ * <pre>
+ * 头部 24 字节: magic "EPBK" | version(int) | pageCount(int) | reserved(int) | indexOffset(long)
+ * 正文:        第 1..N 页的 UTF-8 字节，顺序排列
+ * 索引:        indexOffset 处 N+1 个 long，第 i 页 = [offsets[i-1], offsets[i])
+ * </pre>
+ */
+public class BookPack {
+
+    static final int MAGIC = 0x4550424B; // "EPBK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    private final MappedByteBuffer buffer;
+    private final int pageCount;
+    private final long indexOffset;
+    private final long fileSize;
+    private final long lastModified;
+
+    private BookPack(MappedByteBuffer buffer, int pageCount, long indexOffset, long fileSize, long lastModified) {
+        this.buffer = buffer;
+        this.pageCount = pageCount;
+        this.indexOffset = indexOffset;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+    }
+
+    public static BookPack open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("无效的书籍包大小: " + file + " (" + size + ")");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("不是书籍包文件: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("不支持的书籍包版本: " + buffer.getInt(4));
+            }
+            int pageCount = buffer.getInt(8);
+            long indexOffset = buffer.getLong(16);
+            if (pageCount < 0 || indexOffset < HEADER_SIZE || indexOffset + (pageCount + 1L) * Long.BYTES > size) {
+                throw new IOException("书籍包索引损坏: " + file);
+            }
+            // 映射在关闭 channel 后依然有效
+            return new BookPack(buffer, pageCount, indexOffset, size,
+                    file.toFile().lastModified());
+        }
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public boolean hasPage(int pageIndex) {
+        return pageIndex >= 1 && pageIndex <= pageCount;
+    }
+
+    /**
+     * @param pageIndex 从 1 开始
+     * @return 页面字节的只读切片，不拷贝；页码越界或该页索引损坏时返回 null
+     */
+    public ByteBuffer pageBytes(int pageIndex) {
+        if (!hasPage(pageIndex)) {
+            return null;
+        }
+        long start = buffer.getLong((int) indexOffset + (pageIndex - 1) * Long.BYTES);
+        long end = buffer.getLong((int) indexOffset + pageIndex * Long.BYTES);
+        if (start < HEADER_SIZE || start > end || end > indexOffset) {
+            return null;
+        }
+        return buffer.slice((int) start, (int) (end - start)).asReadOnlyBuffer();
+    }
+
+    public String getPage(int pageIndex) {
+        ByteBuffer bytes = pageBytes(pageIndex);
+        return bytes == null ? null : StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.jp.epubbot.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 将旧的一页一文件目录批量转换为书籍包。默认关闭，
+ * 通过 app.local.pack.convert-on-startup=true 在启动时执行一次。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookPackConverter implements ApplicationRunner {
+
+    private final LocalBookService localBookService;
+
+    @Value("${app.local.pack.convert-on-startup:false}")
+    private boolean convertOnStartup;
+
+    @Value("${app.local.pack.delete-source:true}")
+    private boolean deleteSource;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (convertOnStartup) {
+            convertAll();
+        }
+    }
+
+    /**
+     * @return 转换成功的书籍数量
+     */
+    public int convertAll() {
+        List<String> bookIds;
+        try {
+            bookIds = localBookService.listUnpackedBooks();
+        } catch (Exception e) {
+            log.error("扫描本地书籍目录失败", e);
+            return 0;
+        }
+
+        int converted = 0;
+        long totalPages = 0;
+        for (String bookId : bookIds) {
+            try {
+                int pages = localBookService.convertToPack(bookId, deleteSource);
+                if (pages > 0) {
+                    converted++;
+                    totalPages += pages;
+                    log.info("已转换为书籍包: {} ({} 页)", bookId, pages);
+                }
+            } catch (Exception e) {
+                log.error("转换书籍包失败: {}", bookId, e);
+            }
+        }
+        log.info("书籍包转换完成: {}/{} 本, 共 {} 页", converted, bookIds.size(), totalPages);
+        return converted;
+    }
+}
@@ -0,0 +1,106 @@
+package com.jp.epubbot.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 顺序写入书籍包：先写占位头部，逐页追加正文，close 时写入偏移索引并回填头部，
+ * 最后从临时文件原子替换为正式文件，读取方不会看到写了一半的包。
+ */
+public class BookPackWriter implements Closeable {
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private long[] offsets = new long[64];
+    private int pageCount = 0;
+    private long position = BookPack.HEADER_SIZE;
+    private boolean closed = false;
+
+    public BookPackWriter(Path target) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.write(ByteBuffer.allocate(BookPack.HEADER_SIZE), 0);
+        offsets[0] = position;
+    }
+
+    /**
+     * 追加下一页，页码按调用顺序从 1 开始
+     */
+    public void appendPage(String html) throws IOException {
+        appendPage(html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IOException 书籍包超过 BookPack 可映射的 2GB 上限
+     */
+    public void appendPage(byte[] content) throws IOException {
+        // 正文加上索引（每页一个 long，另有结尾一个）不能超过 BookPack.open 接受的大小
+        if (position + content.length + (pageCount + 2L) * Long.BYTES > Integer.MAX_VALUE) {
+            throw new IOException("书籍包超过 2GB 上限: " + target + ", 已写入 " + pageCount + " 页");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(content);
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+        pageCount++;
+        if (pageCount + 1 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[pageCount] = position;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (channel) {
+            long indexOffset = position;
+            ByteBuffer index = ByteBuffer.allocate((pageCount + 1) * Long.BYTES);
+            for (int i = 0; i <= pageCount; i++) {
+                index.putLong(offsets[i]);
+            }
+            index.flip();
+            long p = indexOffset;
+            while (index.hasRemaining()) {
+                p += channel.write(index, p);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(BookPack.HEADER_SIZE);
+            header.putInt(BookPack.MAGIC).putInt(BookPack.VERSION).putInt(pageCount).putInt(0).putLong(indexOffset);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 放弃写入并删除临时文件
+     */
+    public void abort() {
+        closed = true;
+        try {
+            channel.close();
+            Files.deleteIfExists(temp);
+        } catch (IOException ignore) {
+        }
+    }
+}
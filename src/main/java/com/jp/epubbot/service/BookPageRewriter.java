@@ -0,0 +1,41 @@
+package com.jp.epubbot.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 重命名后在后台逐页改写 R2 静态页面中写死的标题。
+ * 页面已通过 meta.json 在打开时显示新书名，这一步只影响不执行脚本的场景（预览、爬虫、旧页面），默认关闭。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookPageRewriter {
+
+    private final R2StorageService r2StorageService;
+    private final CloudflareService cloudflareService;
+
+    @Async
+    public void rewriteTitles(List<String> pageUrls, String newName) {
+        log.info("后台改写页面标题: [{}] 共 {} 页", newName, pageUrls.size());
+        int done = 0;
+        for (String url : pageUrls) {
+            int idx = url.indexOf("books/");
+            if (idx < 0) {
+                continue;
+            }
+            try {
+                r2StorageService.updateHtmlTitle(url.substring(idx), newName);
+                cloudflareService.purgeCache(url);
+                done++;
+            } catch (Exception e) {
+                log.warn("改写页面标题失败: {}", url, e);
+            }
+        }
+        log.info("页面标题改写完成: [{}] {}/{}", newName, done, pageUrls.size());
+    }
+}
@@ -1,6 +1,6 @@
 package com.jp.epubbot.service;
 
-import com.jp.epubbot.entity.BookmarkToken;
+import com.jp.epubbot.event.BookChangedEvent;
 import io.documentnode.epub4j.domain.Book;
 import io.documentnode.epub4j.domain.Resource;
 import io.documentnode.epub4j.epub.EpubReader;
@@ -19,6 +19,7 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
@@ -26,9 +27,10 @@ import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @Service("bookParseService")
@@ -36,7 +38,10 @@ import java.util.UUID;
 public class BookParseService {
 
     private final BookmarkService bookmarkService;
-    private final R2StorageService r2StorageService;
+    private final StorageBackend storageBackend;
+    private final PageTokenCodec pageTokenCodec;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IngestMetrics ingestMetrics;
 
     @Value("${app.chars-per-page:3000}")
     private int charsPerPage;
@@ -48,144 +53,228 @@ public class BookParseService {
     private String botUsername;
 
     public List<String> processEpub(java.io.InputStream epubStream, String fileName) throws Exception {
+        return processEpub(epubStream, fileName, IngestProgress.none());
+    }
+
+    public List<String> processEpub(java.io.InputStream epubStream, String fileName, IngestProgress progress) throws Exception {
+        return ingestMetrics.record("epub", progress, () -> doProcessEpub(epubStream, fileName, progress));
+    }
+
+    private List<String> doProcessEpub(java.io.InputStream epubStream, String fileName, IngestProgress progress) throws Exception {
+        progress.enter(IngestProgress.Phase.PARSE);
         Book book = new EpubReader().readEpub(epubStream);
 
         String bookTitle = (book.getTitle() != null && !book.getTitle().isEmpty()) ? book.getTitle() : fileName;
 
-        BookmarkToken existsBook = bookmarkService.findBook(bookTitle);
+        String existsUrl = bookmarkService.findFirstPageUrl(bookTitle);
 
-        if (existsBook != null && StringUtils.isNotEmpty(existsBook.getUrl())) {
+        if (StringUtils.isNotEmpty(existsUrl)) {
             log.warn("processEpub [{}] is exists. ", bookTitle);
-            return List.of("exists", existsBook.getUrl());
+            return List.of("exists", existsUrl);
         }
 
         String bookId = UUID.randomUUID().toString().replace("-", "");
+        try (StorageBackend.PageWriter pages = storageBackend.openPages(bookId)) {
 
-        List<String> pageUrls = new ArrayList<>();
-        List<Resource> contents = book.getContents();
-
-        StringBuilder currentHtmlBuffer = new StringBuilder();
-        int currentLength = 0;
-        int pageCounter = 1;
+            List<String> pageUrls = new ArrayList<>();
+            List<CompletableFuture<String>> uploads = new ArrayList<>();
+            List<Resource> contents = book.getContents();
 
-        log.info("开始解析epub书籍: {} (ID: {})", bookTitle, bookId);
+            StringBuilder currentHtmlBuffer = new StringBuilder();
+            int currentLength = 0;
+            int pageCounter = 1;
 
-        for (Resource res : contents) {
-            try {
-                String html = new String(res.getData(), StandardCharsets.UTF_8);
-                Document doc = Jsoup.parse(html);
-                Element body = doc.body();
+            log.info("开始解析epub书籍: {} (ID: {})", bookTitle, bookId);
+            long totalBytes = 0;
+            for (Resource res : contents) {
+                totalBytes += res.getData().length;
+            }
+            progress.begin(IngestProgress.Unit.BYTES, totalBytes);
+            progress.enter(IngestProgress.Phase.PAGINATE);
 
-                body.select("script, style, meta, link, title, iframe, head").remove();
+            for (Resource res : contents) {
+                progress.advance(res.getData().length);
+                try {
+                    IngestProgress.Phase outer = progress.enter(IngestProgress.Phase.CLEAN);
+                    String html = new String(res.getData(), StandardCharsets.UTF_8);
+                    Document doc = Jsoup.parse(html);
+                    Element body = doc.body();
 
-                if (isContentEmpty(body)) continue;
+                    body.select("script, style, meta, link, title, iframe, head").remove();
 
-                removeInvalidLinks(body);
-                handleImagesR2(doc, book, res.getHref(), bookId);
+                    boolean empty = isContentEmpty(body);
+                    if (!empty) {
+                        removeInvalidLinks(body);
+                        handleImagesR2(doc, book, res.getHref(), bookId, uploads, progress);
+                    }
+                    progress.enter(outer);
+                    if (empty) continue;
 
-                for (Element child : body.children()) {
-                    String childHtml = child.outerHtml();
-                    int childLen = child.text().length();
+                    for (Element child : body.children()) {
+                        String childHtml = child.outerHtml();
+                        int childLen = child.text().length();
 
-                    if (!child.select("img").isEmpty() || child.tagName().equalsIgnoreCase("img") || child.tagName().equalsIgnoreCase("svg")) {
-                        childLen += 500;
-                    }
+                        if (!child.select("img").isEmpty() || child.tagName().equalsIgnoreCase("img") || child.tagName().equalsIgnoreCase("svg")) {
+                            childLen += 500;
+                        }
 
-                    int minPageThreshold = 800;
-                    if ((currentLength + childLen > charsPerPage) && (currentLength > minPageThreshold)) {
-                        String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-                        String pageUrl = uploadPage(bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
-                        pageUrls.add(pageUrl);
-                        bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ")", pageUrl, token);
-                        currentHtmlBuffer.setLength(0);
-                        currentLength = 0;
-                        pageCounter++;
+                        int minPageThreshold = 800;
+                        if ((currentLength + childLen > charsPerPage) && (currentLength > minPageThreshold)) {
+                            String token = pageTokenCodec.encode(bookId, pageCounter);
+                            String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
+                            pageUrls.add(pageUrl);
+                            currentHtmlBuffer.setLength(0);
+                            currentLength = 0;
+                            pageCounter++;
+                        }
+                        currentHtmlBuffer.append(childHtml);
+                        currentLength += childLen;
                     }
-                    currentHtmlBuffer.append(childHtml);
-                    currentLength += childLen;
+                } catch (Exception e) {
+                    log.error("解析章节失败: {}", res.getHref(), e);
                 }
-            } catch (Exception e) {
-                log.error("解析章节失败: {}", res.getHref(), e);
             }
+
+            if (!currentHtmlBuffer.isEmpty()) {
+                String token = pageTokenCodec.encode(bookId, pageCounter);
+                String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), true, token);
+                pageUrls.add(pageUrl);
+            }
+            progress.stage(IngestProgress.Stage.UPLOADING);
+            progress.enter(IngestProgress.Phase.UPLOAD);
+            awaitUploads(uploads);
+            pages.commit();
+            progress.stage(IngestProgress.Stage.REGISTERING);
+            progress.enter(IngestProgress.Phase.PERSIST);
+            registerBook(bookId, bookTitle, pageUrls);
+            log.info("解析epub书籍完成: {} (ID: {})", bookTitle, bookId);
+            return pageUrls;
         }
+    }
 
-        if (!currentHtmlBuffer.isEmpty()) {
-            String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-            String pageUrl = uploadPage(bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), true, token);
-            pageUrls.add(pageUrl);
-            bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ") - End", pageUrl, token);
+    private void registerBook(String bookId, String bookTitle, List<String> pageUrls) {
+        if (pageUrls.isEmpty()) {
+            return;
         }
-        log.info("解析epub书籍完成: {} (ID: {})", bookTitle, bookId);
-        return pageUrls;
+        bookmarkService.registerBook(bookId, bookTitle, pageUrls.size(), storageBackend.kind(), pageUrls.get(0));
+        bookmarkService.publishBookMeta(bookId, bookTitle, pageUrls.size());
+        eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Type.CREATED, bookId, bookTitle));
     }
 
-    private String uploadPage(String bookId, String bookTitle, int pageIndex, String content, boolean isLastPage, String token) {
+    /**
+     * 页面异步上传，地址可以预先确定；登记书籍前由 awaitUploads 等待全部完成
+     */
+    private String uploadPage(StorageBackend.PageWriter pages, List<CompletableFuture<String>> uploads, IngestProgress progress, String bookId, String bookTitle, int pageIndex,
+                              String content, boolean isLastPage, String token) {
+        IngestProgress.Phase outer = progress.enter(IngestProgress.Phase.RENDER);
         String html = buildHtmlTemplate(bookTitle, content, pageIndex, isLastPage, token);
-        String path = "books/" + bookId + "/" + pageIndex + ".html";
-        return r2StorageService.uploadFile(path, html.getBytes(StandardCharsets.UTF_8), "text/html");
+        // 非 R2 后端是同步写入，时间计入 UPLOAD
+        progress.enter(IngestProgress.Phase.UPLOAD);
+        CompletableFuture<String> upload = pages.putPage(pageIndex, html.getBytes(StandardCharsets.UTF_8));
+        progress.enter(outer);
+        uploads.add(upload);
+        progress.pageQueued(upload);
+        return storageBackend.pageUrl(bookId, pageIndex);
+    }
+
+    private void awaitUploads(List<CompletableFuture<String>> uploads) {
+        try {
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("上传书籍页面失败: " + e.getCause().getMessage(), e.getCause());
+        }
     }
 
     public List<String> processTxt(InputStream txtStream, String fileName) throws Exception {
+        return processTxt(txtStream, fileName, IngestProgress.none());
+    }
+
+    public List<String> processTxt(InputStream txtStream, String fileName, IngestProgress progress) throws Exception {
+        return ingestMetrics.record("txt", progress, () -> doProcessTxt(txtStream, fileName, progress));
+    }
+
+    private List<String> doProcessTxt(InputStream txtStream, String fileName, IngestProgress progress) throws Exception {
+        progress.enter(IngestProgress.Phase.PARSE);
         String bookTitle = fileName.replace(".txt", "").replace(".TXT", "");
         String bookId = UUID.randomUUID().toString().replace("-", "");
         List<String> pageUrls = new ArrayList<>();
+        List<CompletableFuture<String>> uploads = new ArrayList<>();
 
-        BookmarkToken existsBook = bookmarkService.findBook(bookTitle);
-        if (existsBook != null && StringUtils.isNotEmpty(existsBook.getUrl())) {
+        String existsUrl = bookmarkService.findFirstPageUrl(bookTitle);
+        if (StringUtils.isNotEmpty(existsUrl)) {
             log.warn("processTxt [{}] is exists. ", bookTitle);
-            return List.of("exists", existsBook.getUrl());
+            return List.of("exists", existsUrl);
         }
 
-        log.info("开始解析TXT书籍: {} (ID: {})", bookTitle, bookId);
+        try (StorageBackend.PageWriter pages = storageBackend.openPages(bookId)) {
+            log.info("开始解析TXT书籍: {} (ID: {})", bookTitle, bookId);
 
-        List<String> lines;
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(txtStream, StandardCharsets.UTF_8))) {
-            lines = reader.lines().toList();
-        }
+            List<String> lines;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(txtStream, StandardCharsets.UTF_8))) {
+                lines = reader.lines().toList();
+            }
+            progress.begin(IngestProgress.Unit.CHARS, lines.stream().mapToLong(String::length).sum());
+            progress.enter(IngestProgress.Phase.PAGINATE);
 
-        StringBuilder currentHtmlBuffer = new StringBuilder();
-        int currentLength = 0;
-        int pageCounter = 1;
+            StringBuilder currentHtmlBuffer = new StringBuilder();
+            int currentLength = 0;
+            int pageCounter = 1;
 
-        for (String line : lines) {
-            String safeLine = line.replace("&", "&amp;")
-                    .replace("<", "&lt;")
-                    .replace(">", "&gt;");
+            for (String line : lines) {
+                progress.advance(line.length());
+                String safeLine = line.replace("&", "&amp;")
+                        .replace("<", "&lt;")
+                        .replace(">", "&gt;");
 
-            String lineHtml = "<p>" + safeLine + "</p>";
+                String lineHtml = "<p>" + safeLine + "</p>";
 
-            if (safeLine.trim().isEmpty()) {
-                lineHtml = "<br/>";
-            }
+                if (safeLine.trim().isEmpty()) {
+                    lineHtml = "<br/>";
+                }
 
-            int lineLen = safeLine.length();
+                int lineLen = safeLine.length();
 
-            if ((currentLength + lineLen > charsPerPage) && (currentLength > 1000)) {
-                String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-                String pageUrl = uploadPage(bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
-                pageUrls.add(pageUrl);
-                bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ")", pageUrl, token);
+                if ((currentLength + lineLen > charsPerPage) && (currentLength > 1000)) {
+                    String token = pageTokenCodec.encode(bookId, pageCounter);
+                    String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
+                    pageUrls.add(pageUrl);
 
-                currentHtmlBuffer.setLength(0);
-                currentLength = 0;
-                pageCounter++;
-            }
+                    currentHtmlBuffer.setLength(0);
+                    currentLength = 0;
+                    pageCounter++;
+                }
 
-            currentHtmlBuffer.append(lineHtml);
-            currentLength += lineLen;
-        }
+                currentHtmlBuffer.append(lineHtml);
+                currentLength += lineLen;
+            }
 
-        if (!currentHtmlBuffer.isEmpty()) {
-            String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-            String pageUrl = uploadPage(bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), true, token);
-            pageUrls.add(pageUrl);
-            bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ") - End", pageUrl, token);
+            if (!currentHtmlBuffer.isEmpty()) {
+                String token = pageTokenCodec.encode(bookId, pageCounter);
+                String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), true, token);
+                pageUrls.add(pageUrl);
+            }
+            progress.stage(IngestProgress.Stage.UPLOADING);
+            progress.enter(IngestProgress.Phase.UPLOAD);
+            awaitUploads(uploads);
+            pages.commit();
+            progress.stage(IngestProgress.Stage.REGISTERING);
+            progress.enter(IngestProgress.Phase.PERSIST);
+            registerBook(bookId, bookTitle, pageUrls);
+            log.info("解析TXT书籍完成: {} (ID: {})", bookTitle, bookId);
+            return pageUrls;
         }
-        log.info("解析TXT书籍完成: {} (ID: {})", bookTitle, bookId);
-        return pageUrls;
     }
 
     public List<String> processPdf(InputStream pdfStream, String fileName) throws Exception {
+        return processPdf(pdfStream, fileName, IngestProgress.none());
+    }
+
+    public List<String> processPdf(InputStream pdfStream, String fileName, IngestProgress progress) throws Exception {
+        return ingestMetrics.record("pdf", progress, () -> doProcessPdf(pdfStream, fileName, progress));
+    }
+
+    private List<String> doProcessPdf(InputStream pdfStream, String fileName, IngestProgress progress) throws Exception {
+        progress.enter(IngestProgress.Phase.PARSE);
         PDDocument document = null;
         try {
             try {
@@ -209,95 +298,116 @@ public class BookParseService {
                     ? titleFromMeta
                     : fileName.replace(".pdf", "").replace(".PDF", "");
 
-            BookmarkToken existsBook = bookmarkService.findBook(bookTitle);
-            if (existsBook != null && StringUtils.isNotEmpty(existsBook.getUrl())) {
+            String existsUrl = bookmarkService.findFirstPageUrl(bookTitle);
+            if (StringUtils.isNotEmpty(existsUrl)) {
                 log.warn("processPdf [{}] is exists. ", bookTitle);
-                return List.of("exists", existsBook.getUrl());
+                return List.of("exists", existsUrl);
             }
 
             String bookId = UUID.randomUUID().toString().replace("-", "");
-            List<String> pageUrls = new ArrayList<>();
-
-            PDFTextStripper stripper = new PDFTextStripper();
-            stripper.setSortByPosition(true);
-
-            // 准备图片渲染器 (用于处理纯图片页面)
-            PDFRenderer renderer = new PDFRenderer(document);
-
-            StringBuilder currentHtmlBuffer = new StringBuilder();
-            int currentLength = 0;
-            int pageCounter = 1;
-            int totalPdfPages = document.getNumberOfPages();
-
-            for (int pageIndexForImage = 0; pageIndexForImage < totalPdfPages; pageIndexForImage++) { // PDFBox 页码从 0 开始渲染，但提取文本是从 1 开始
-                int pageIndexForText = pageIndexForImage + 1; // 文本提取用 1-based
-
-                stripper.setStartPage(pageIndexForText);
-                stripper.setEndPage(pageIndexForText);
-
-                try {
-                    String pageText = stripper.getText(document);
-
-                    // 判断是否为“纯图片”页面 如果提取出的有效字符少于 10 个，通常认为是扫描件或全图页
-                    if (pageText.trim().length() < 10) {
-
-                        BufferedImage image = renderer.renderImageWithDPI(pageIndexForImage, 150, ImageType.RGB);
-
-                        String imageSrc = convertImageToBase64(image);
-                        String imgHtml = String.format(
-                                "<div class='pdf-image-page'><img src='%s' style='width:100%%; display:block;' /></div>",
-                                imageSrc
-                        );
-
-                        if (currentLength > 0) {
-                            String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-                            String pageUrl = uploadPage(bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
-                            pageUrls.add(pageUrl);
-                            bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ")", pageUrl, token);
-                            currentHtmlBuffer.setLength(0);
-                            currentLength = 0;
-                            pageCounter++;
-                        }
-
-                        String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-                        String pageUrl = uploadPage(bookId, bookTitle, pageCounter, imgHtml, false, token);
-                        pageUrls.add(pageUrl);
-                        bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ") [图]", pageUrl, token);
-                        pageCounter++;
-
-                    } else {
-                        String[] lines = pageText.split("\\r?\\n");
-                        for (String line : lines) {
-                            String safeLine = line.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
-                            String lineHtml = safeLine.trim().isEmpty() ? "<br/>" : "<p>" + safeLine + "</p>";
-
-                            int lineLen = safeLine.length();
-
-                            if ((currentLength + lineLen > charsPerPage) && (currentLength > 800)) {
-                                String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-                                String pageUrl = uploadPage(bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
+            try (StorageBackend.PageWriter pages = storageBackend.openPages(bookId)) {
+                List<String> pageUrls = new ArrayList<>();
+                List<CompletableFuture<String>> uploads = new ArrayList<>();
+
+                PDFTextStripper stripper = new PDFTextStripper();
+                stripper.setSortByPosition(true);
+
+                // 准备图片渲染器 (用于处理纯图片页面)
+                PDFRenderer renderer = new PDFRenderer(document);
+
+                StringBuilder currentHtmlBuffer = new StringBuilder();
+                int currentLength = 0;
+                int pageCounter = 1;
+                int totalPdfPages = document.getNumberOfPages();
+                progress.begin(IngestProgress.Unit.PAGES, totalPdfPages);
+                progress.enter(IngestProgress.Phase.PAGINATE);
+
+                for (int pageIndexForImage = 0; pageIndexForImage < totalPdfPages; pageIndexForImage++) { // PDFBox 页码从 0 开始渲染，但提取文本是从 1 开始
+                    int pageIndexForText = pageIndexForImage + 1; // 文本提取用 1-based
+                    progress.advance(1);
+
+                    stripper.setStartPage(pageIndexForText);
+                    stripper.setEndPage(pageIndexForText);
+
+                    try {
+                        // 文本提取和整页渲染都算 PARSE
+                        IngestProgress.Phase outer = progress.enter(IngestProgress.Phase.PARSE);
+                        String pageText = stripper.getText(document);
+                        progress.enter(outer);
+
+                        // 判断是否为“纯图片”页面 如果提取出的有效字符少于 10 个，通常认为是扫描件或全图页
+                        if (pageText.trim().length() < 10) {
+
+                            progress.enter(IngestProgress.Phase.PARSE);
+                            BufferedImage image = renderer.renderImageWithDPI(pageIndexForImage, 150, ImageType.RGB);
+                            byte[] jpeg = encodeJpeg(image);
+
+                            // 渲染图单独上传，不再以 base64 内联进页面
+                            String imageKey = "books/" + bookId + "/images/pdf-" + pageIndexForText + ".jpg";
+                            progress.enter(IngestProgress.Phase.UPLOAD);
+                            CompletableFuture<String> imageUpload = storageBackend.putAsync(imageKey, jpeg, "image/jpeg");
+                            progress.enter(outer);
+                            uploads.add(imageUpload);
+                            progress.imageQueued(imageUpload);
+                            String imageSrc = storageBackend.publicUrl(imageKey);
+                            String imgHtml = String.format(
+                                    "<div class='pdf-image-page'><img src='%s' style='width:100%%; display:block;' /></div>",
+                                    imageSrc
+                            );
+
+                            if (currentLength > 0) {
+                                String token = pageTokenCodec.encode(bookId, pageCounter);
+                                String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
                                 pageUrls.add(pageUrl);
-                                bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ")", pageUrl, token);
                                 currentHtmlBuffer.setLength(0);
                                 currentLength = 0;
                                 pageCounter++;
                             }
-                            currentHtmlBuffer.append(lineHtml);
-                            currentLength += lineLen;
+
+                            String token = pageTokenCodec.encode(bookId, pageCounter);
+                            String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, imgHtml, false, token);
+                            pageUrls.add(pageUrl);
+                            pageCounter++;
+
+                        } else {
+                            String[] lines = pageText.split("\\r?\\n");
+                            for (String line : lines) {
+                                String safeLine = line.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+                                String lineHtml = safeLine.trim().isEmpty() ? "<br/>" : "<p>" + safeLine + "</p>";
+
+                                int lineLen = safeLine.length();
+
+                                if ((currentLength + lineLen > charsPerPage) && (currentLength > 800)) {
+                                    String token = pageTokenCodec.encode(bookId, pageCounter);
+                                    String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), false, token);
+                                    pageUrls.add(pageUrl);
+                                    currentHtmlBuffer.setLength(0);
+                                    currentLength = 0;
+                                    pageCounter++;
+                                }
+                                currentHtmlBuffer.append(lineHtml);
+                                currentLength += lineLen;
+                            }
                         }
+                    } catch (Exception e) {
+                        log.error("解析PDF第 {} 页失败", pageIndexForText, e);
                     }
-                } catch (Exception e) {
-                    log.error("解析PDF第 {} 页失败", pageIndexForText, e);
                 }
-            }
 
-            if (!currentHtmlBuffer.isEmpty()) {
-                String token = "bm_" + UUID.randomUUID().toString().substring(0, 8);
-                String pageUrl = uploadPage(bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), true, token);
-                pageUrls.add(pageUrl);
-                bookmarkService.createBookmarkToken(bookTitle, bookTitle + " (" + pageCounter + ") - End", pageUrl, token);
+                if (!currentHtmlBuffer.isEmpty()) {
+                    String token = pageTokenCodec.encode(bookId, pageCounter);
+                    String pageUrl = uploadPage(pages, uploads, progress, bookId, bookTitle, pageCounter, currentHtmlBuffer.toString(), true, token);
+                    pageUrls.add(pageUrl);
+                }
+                progress.stage(IngestProgress.Stage.UPLOADING);
+                progress.enter(IngestProgress.Phase.UPLOAD);
+                awaitUploads(uploads);
+                pages.commit();
+                progress.stage(IngestProgress.Stage.REGISTERING);
+                progress.enter(IngestProgress.Phase.PERSIST);
+                registerBook(bookId, bookTitle, pageUrls);
+                return pageUrls;
             }
-            return pageUrls;
         } finally {
             if (document != null) {
                 document.close();
@@ -305,14 +415,14 @@ public class BookParseService {
         }
     }
 
-    private String convertImageToBase64(BufferedImage image) throws IOException {
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ImageIO.write(image, "jpg", baos);
-        byte[] bytes = baos.toByteArray();
-        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(bytes);
+        return baos.toByteArray();
     }
 
-    private void handleImagesR2(Document doc, Book book, String currentResourceHref, String bookId) {
+    private void handleImagesR2(Document doc, Book book, String currentResourceHref, String bookId,
+                                List<CompletableFuture<String>> uploads, IngestProgress progress) {
         for (Element img : doc.select("img")) {
             String src = img.attr("src");
             if (src.startsWith("http") || src.contains("tgchannels")) continue;
@@ -325,9 +435,14 @@ public class BookParseService {
                         String fileName = UUID.randomUUID().toString().substring(0, 8) + ".jpg"; // 简化后缀处理
                         String path = "books/" + bookId + "/images/" + fileName;
 
-                        String r2Url = r2StorageService.uploadFile(path, data, "image/jpeg"); // 需根据实际类型设置 Content-Type
+                        IngestProgress.Phase outer = progress.enter(IngestProgress.Phase.UPLOAD);
+                        CompletableFuture<String> upload = storageBackend.putAsync(path, data, "image/jpeg"); // 需根据实际类型设置 Content-Type
+                        progress.enter(outer);
+                        uploads.add(upload);
+                        progress.imageQueued(upload);
+                        String imageUrl = storageBackend.publicUrl(path);
 
-                        img.attr("src", r2Url); // 替换为 R2 的绝对路径
+                        img.attr("src", imageUrl); // 替换为存储后端的访问地址
                         img.attr("style", "max-width: 100%; height: auto; display: block; margin: 10px auto;");
                     }
                 }
@@ -338,6 +453,8 @@ public class BookParseService {
     }
 
     private String buildHtmlTemplate(String title, String content, int pageIndex, boolean isLastPage, String token) {
+        // 书签与阅读进度按完整书名归档，标题栏才截断
+        String bookName = title == null ? "" : title.replace("\\", "\\\\").replace("\"", "\\\"");
         // 计算上一页/下一页的相对路径
         String prevUrl = (pageIndex > 1) ? "./" + (pageIndex - 1) + ".html" : "javascript:void(0)";
         String nextUrl = (!isLastPage) ? "./" + (pageIndex + 1) + ".html" : "javascript:void(0)";
@@ -715,12 +832,38 @@ public class BookParseService {
                 
                     // 静态页面需要的额外变量
                     const API_BASE = "%s";
-                    const BOOK_NAME = "%s";
+                    let BOOK_NAME = "%s";
                     const PAGE_INDEX = %d;
                     const CURRENT_URL = window.location.href;
                 
                     let preloadedDoc = null;
                 
+                    // 书名以 meta.json 为准，重命名后无需改写每一页
+                    let metaTitle = null;
+                    // 总页数同样来自 meta.json，用于计算全书阅读进度
+                    let totalPages = 0;
+                
+                    function applyMetaTitle() {
+                        if (!metaTitle) return;
+                        const shown = metaTitle.length > 10 ? metaTitle.substring(0, 10) + '...' : metaTitle;
+                        titleElem.innerText = shown;
+                        document.title = shown;
+                    }
+                
+                    fetch('./meta.json', { cache: 'no-cache' })
+                        .then(res => res.ok ? res.json() : null)
+                        .then(meta => {
+                            if (meta && meta.title) {
+                                metaTitle = meta.title;
+                                BOOK_NAME = meta.title;
+                                applyMetaTitle();
+                            }
+                            if (meta && meta.pageCount > 0) {
+                                totalPages = meta.pageCount;
+                            }
+                        })
+                        .catch(() => {});
+                
                     const FONT_SERIF = 'font-style-serif';
                     const FONT_SANS = 'font-style-sans';
                     const STORAGE_KEY = 'epub_reader_font_style';
@@ -826,6 +969,7 @@ public class BookParseService {
                             document.title = newTitleElem.innerText;
                             bookmarkToken = newTitleElem.getAttribute('data-token');
                             titleElem.setAttribute('data-token', bookmarkToken);
+                            applyMetaTitle();
                         }
                 
                         const newContent = doc.getElementById('contentArea').innerHTML;
@@ -861,6 +1005,7 @@ public class BookParseService {
                         // updateNavState(); // 静态页面不需要重新解析 URL，因为 input value 已经从新页面获取了
                         preloadedDoc = null;
                         prefetchNext();
+                        scheduleProgress();
                     }
                 
                     window.addEventListener('popstate', () => {
@@ -949,6 +1094,60 @@ public class BookParseService {
                         .catch(() => showMessage('❌ 网络错误'));
                     }
                 
+                    const PROGRESS_API = API_BASE + '/api/miniapp/progress';
+
+                    // 全书进度 0~1；meta.json 未加载到总页数时只上报页内位置
+                    function progressOf(ratio) {
+                        return totalPages > 0 ? Math.min(1, (PAGE_INDEX - 1 + ratio) / totalPages) : null;
+                    }
+
+                    // --- 阅读进度同步：滚动停止后上报，页面隐藏时补发一次 ---
+                    let progressTimer = null;
+
+                    function scrollRatio() {
+                        const max = document.documentElement.scrollHeight - window.innerHeight;
+                        return max > 0 ? Math.min(1, Math.max(0, window.scrollY / max)) : 0;
+                    }
+
+                    function reportProgress() {
+                        const user = tg.initDataUnsafe && tg.initDataUnsafe.user;
+                        if (!user || !BOOK_NAME) return;
+                        const ratio = scrollRatio();
+                        fetch(PROGRESS_API, {
+                            method: 'POST',
+                            keepalive: true,
+                            headers: {'Content-Type': 'application/json', 'X-Telegram-Init-Data': tg.initData || ''},
+                            body: JSON.stringify({
+                                userId: user.id,
+                                bookName: BOOK_NAME,
+                                chapterTitle: titleElem.innerText,
+                                url: window.location.origin + window.location.pathname,
+                                position: ratio.toFixed(4),
+                                progress: progressOf(ratio),
+                                timestamp: Date.now()
+                            })
+                        }).catch(() => {});
+                    }
+
+                    function scheduleProgress() {
+                        clearTimeout(progressTimer);
+                        progressTimer = setTimeout(reportProgress, 1500);
+                    }
+
+                    // 从 "继续阅读" 进入时地址带 #pos=0.xxxx，恢复到上次的滚动位置
+                    function restorePosition() {
+                        const match = window.location.hash.match(/pos=([0-9.]+)/);
+                        if (!match) return;
+                        const max = document.documentElement.scrollHeight - window.innerHeight;
+                        if (max > 0) window.scrollTo(0, max * parseFloat(match[1]));
+                    }
+
+                    window.addEventListener('scroll', scheduleProgress, {passive: true});
+                    window.addEventListener('load', restorePosition);
+                    document.addEventListener('visibilitychange', () => {
+                        if (document.visibilityState === 'hidden') reportProgress();
+                    });
+
                     initFont();
                     // updateNavState();
                     setTimeout(prefetchNext, 800);
@@ -965,7 +1164,7 @@ public class BookParseService {
                 nextUrl, nextStyle, // Next Button
                 endStyle, // End Span
                 token, nextUrl, botUsername, // JS Variables 1
-                apiBaseUrl, title, pageIndex // JS Variables 2
+                apiBaseUrl, bookName, pageIndex // JS Variables 2
         );
     }
 
@@ -0,0 +1,245 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.Book;
+import com.jp.epubbot.repository.BookRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 书名内存索引：字符 n-gram + 拼音全拼 / 首字母，替代 LIKE '%x%' 全表扫描。
+ * 启动时从数据库构建，入库、重命名、删除时增量更新。
+ * 旧版按章节标题搜索，而章节标题只是「书名 (页码)」，因此只索引书名，
+ * 查询里带的页码后缀会先去掉再匹配。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookSearchIndex {
+
+    private static final int SCORE_EXACT = 100;
+    private static final int SCORE_PREFIX = 80;
+    private static final int SCORE_CONTAINS = 60;
+    private static final int SCORE_INITIALS_PREFIX = 50;
+    private static final int SCORE_PINYIN_PREFIX = 45;
+    private static final int SCORE_INITIALS_CONTAINS = 40;
+    private static final int SCORE_PINYIN_CONTAINS = 35;
+
+    // 章节标题形如「书名 (12)」「书名 (12) - End」「书名 (12) [图]」，normalize 之后的形式
+    private static final Pattern PAGE_SUFFIX = Pattern.compile("^(.+?)\\(\\d+\\)(-end|\\[图])?$");
+
+    private static final HanyuPinyinOutputFormat PINYIN_FORMAT = new HanyuPinyinOutputFormat();
+
+    static {
+        PINYIN_FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        PINYIN_FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        PINYIN_FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    private final BookRepository bookRepo;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+
+    public record Entry(String bookName, String url, String firstPageTitle,
+                        String title, String pinyin, String initials) {
+    }
+
+    public record Hit(Entry entry, int score) {
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Book> books = bookRepo.findAll();
+        synchronized (this) {
+            entries.clear();
+            postings.clear();
+            for (Book b : books) {
+                add(b.getTitle(), b.getFirstPageUrl(), b.getTitle() + " (1)");
+            }
+        }
+        log.info("书名索引构建完成: {} 本书, {} 个 gram, 耗时 {} ms",
+                entries.size(), postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 书籍入库完成时调用；已存在的书名不会被覆盖
+     */
+    public synchronized void put(String bookName, String url, String firstPageTitle) {
+        if (bookName == null || entries.containsKey(bookName)) {
+            return;
+        }
+        add(bookName, url, firstPageTitle);
+    }
+
+    public synchronized void remove(String bookName) {
+        Entry old = bookName == null ? null : entries.remove(bookName);
+        if (old == null) {
+            return;
+        }
+        for (String gram : gramsOf(old)) {
+            Set<String> names = postings.get(gram);
+            if (names != null) {
+                names.remove(bookName);
+                if (names.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    public synchronized void rename(String oldName, String newName, String newFirstPageTitle) {
+        Entry old = entries.get(oldName);
+        if (old == null) {
+            return;
+        }
+        remove(oldName);
+        add(newName, old.url(), newFirstPageTitle);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 按相关度排序返回匹配的书籍：完全匹配 > 前缀 > 包含 > 拼音首字母 > 拼音全拼
+     */
+    public List<Entry> search(String query) {
+        String q = stripPageSuffix(normalize(query));
+        if (q.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> candidates = null;
+        for (String gram : queryGrams(q)) {
+            Set<String> names = postings.get(gram);
+            if (names == null) {
+                return List.of();
+            }
+            if (candidates == null) {
+                candidates = new HashSet<>(names);
+            } else {
+                candidates.retainAll(names);
+            }
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+        }
+        if (candidates == null) {
+            return List.of();
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (String name : candidates) {
+            Entry e = entries.get(name);
+            if (e == null) continue;
+            int score = score(e, q);
+            if (score > 0) {
+                hits.add(new Hit(e, score));
+            }
+        }
+        hits.sort(Comparator.comparingInt(Hit::score).reversed()
+                .thenComparingInt(h -> h.entry().title().length())
+                .thenComparing(h -> h.entry().bookName()));
+        return hits.stream().map(Hit::entry).toList();
+    }
+
+    private void add(String bookName, String url, String firstPageTitle) {
+        String title = normalize(bookName);
+        String[] py = toPinyin(title);
+        Entry entry = new Entry(bookName, url, firstPageTitle, title, py[0], py[1]);
+        entries.put(bookName, entry);
+        for (String gram : gramsOf(entry)) {
+            postings.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(bookName);
+        }
+    }
+
+    private static int score(Entry e, String q) {
+        if (e.title().equals(q)) return SCORE_EXACT;
+        if (e.title().startsWith(q)) return SCORE_PREFIX;
+        if (e.title().contains(q)) return SCORE_CONTAINS;
+        if (e.initials().startsWith(q)) return SCORE_INITIALS_PREFIX;
+        if (e.pinyin().startsWith(q)) return SCORE_PINYIN_PREFIX;
+        if (e.initials().contains(q)) return SCORE_INITIALS_CONTAINS;
+        if (e.pinyin().contains(q)) return SCORE_PINYIN_CONTAINS;
+        return 0;
+    }
+
+    private static Set<String> gramsOf(Entry e) {
+        Set<String> grams = new HashSet<>();
+        for (String term : List.of(e.title(), e.pinyin(), e.initials())) {
+            for (int i = 0; i < term.length(); i++) {
+                grams.add(term.substring(i, i + 1));
+                if (i + 2 <= term.length()) {
+                    grams.add(term.substring(i, i + 2));
+                }
+            }
+        }
+        return grams;
+    }
+
+    private static List<String> queryGrams(String q) {
+        if (q.length() == 1) {
+            return List.of(q);
+        }
+        List<String> grams = new ArrayList<>(q.length() - 1);
+        for (int i = 0; i + 2 <= q.length(); i++) {
+            grams.add(q.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    private static String stripPageSuffix(String q) {
+        Matcher m = PAGE_SUFFIX.matcher(q);
+        return m.matches() ? m.group(1) : q;
+    }
+
+    static String normalize(String s) {
+        if (s == null) return "";
+        String n = Normalizer.normalize(s, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(n.length());
+        for (int i = 0; i < n.length(); i++) {
+            char c = n.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return [全拼, 首字母]，非汉字字符原样保留；多音字取第一个读音
+     */
+    private static String[] toPinyin(String title) {
+        StringBuilder full = new StringBuilder();
+        StringBuilder initials = new StringBuilder();
+        for (char c : title.toCharArray()) {
+            String[] readings = null;
+            try {
+                readings = PinyinHelper.toHanyuPinyinStringArray(c, PINYIN_FORMAT);
+            } catch (Exception ignore) {
+            }
+            if (readings != null && readings.length > 0 && !readings[0].isEmpty()) {
+                full.append(readings[0]);
+                initials.append(readings[0].charAt(0));
+            } else if (Character.isLetterOrDigit(c)) {
+                full.append(c);
+                initials.append(c);
+            }
+        }
+        return new String[]{full.toString(), initials.toString()};
+    }
+}
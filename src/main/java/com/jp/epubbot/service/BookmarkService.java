@@ -1,7 +1,13 @@
 package com.jp.epubbot.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jp.epubbot.entity.Book;
 import com.jp.epubbot.entity.BookmarkToken;
+import com.jp.epubbot.entity.DeletionJob;
+import com.jp.epubbot.entity.StorageKind;
 import com.jp.epubbot.entity.UserBookmark;
+import com.jp.epubbot.event.BookChangedEvent;
+import com.jp.epubbot.repository.BookRepository;
 import com.jp.epubbot.repository.BookmarkTokenRepository;
 import com.jp.epubbot.repository.UserBookmarkRepository;
 import jakarta.annotation.PostConstruct;
@@ -9,21 +15,20 @@ import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.function.IntFunction;
 
 @Slf4j
 @Service
@@ -33,17 +38,34 @@ public class BookmarkService {
     @Value("${telegram.bot.admins:}")
     private String adminList;
 
+    // 开启后重命名还会在后台逐页改写 R2 页面里的标题
+    @Value("${app.rename.rewrite-pages:false}")
+    private boolean rewritePages;
+
     private static final String DATA_DIR = "data";
 
-    private final R2StorageService r2StorageService;
+    private final StorageBackend storageBackend;
     private final BookmarkTokenRepository tokenRepo;
+    private final BookRepository bookRepo;
     private final UserBookmarkRepository bookmarkRepo;
     private final LocalBookService localBookService;
     private final CloudflareService cloudflareService;
+    private final BookSearchIndex bookSearchIndex;
+    private final PageTokenCodec pageTokenCodec;
+    private final BookCatalogCache bookCatalogCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BookmarkWriteBuffer bookmarkWriteBuffer;
+    private final SqliteWriter sqliteWriter;
+    private final BookPageRewriter bookPageRewriter;
+    private final BookDeletionService bookDeletionService;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
 
     private List<String> admins;
 
-    private static final Pattern TITLE_PARSER = Pattern.compile("(.*)(\\s\\(\\d+\\).*)");
+    // 先把缓冲中的书签刷入写连接，再开只读事务，避免持有读连接等待写线程
+    private TransactionTemplate readOnlyTx;
+
 
     @Data
     public static class BookmarkInfo {
@@ -64,58 +86,222 @@ public class BookmarkService {
     @Transactional
     public void initAndMigrate() {
         admins = Arrays.stream(adminList.split(",")).toList();
+        readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
         File dir = new File(DATA_DIR);
         if (!dir.exists()) dir.mkdirs();
     }
 
-    @Retryable(value = Exception.class, maxAttempts = 3, backoff = @Backoff(delay = 1000, multiplier = 1.5))
-    public void createBookmarkToken(String bookName, String chapterTitle, String url, String tokenStr) {
-        BookmarkToken token = new BookmarkToken();
-        token.setToken(tokenStr);
-        token.setBookName(bookName);
-        token.setChapterTitle(chapterTitle);
-        token.setUrl(url);
+    /**
+     * 是否为配置的管理员；未配置管理员时没有人是管理员
+     */
+    public boolean isAdmin(Long userId) {
+        return userId != null && admins.contains(String.valueOf(userId));
+    }
 
-        tokenRepo.save(token);
+    /**
+     * 书籍所有页面入库完成后登记到 books 目录
+     */
+    public void registerBook(String bookId, String title, int pageCount, StorageKind storageKind, String firstPageUrl) {
+        Book book = new Book();
+        book.setBookId(bookId);
+        book.setTitle(title);
+        book.setPageCount(pageCount);
+        book.setStorageKind(storageKind);
+        book.setFirstPageUrl(firstPageUrl);
+        sqliteWriter.run(() -> bookRepo.save(book));
+        bookSearchIndex.put(title, firstPageUrl, title + " (1)");
     }
 
     public BookmarkInfo getBookmarkByToken(String tokenStr) {
+        PageTokenCodec.PageRef ref = pageTokenCodec.decode(tokenStr);
+        if (ref != null) {
+            Book book = findBookById(ref.bookId());
+            if (book == null || book.getPageCount() == null || ref.pageIndex() < 1 || ref.pageIndex() > book.getPageCount()) {
+                return null;
+            }
+            return new BookmarkInfo(book.getTitle(), book.getTitle() + " (" + ref.pageIndex() + ")",
+                    buildPageUrl(book, ref.pageIndex()), LocalDateTime.now());
+        }
+
+        // 旧的随机 Token 仍然保存在 bookmark_tokens 表中
         return tokenRepo.findById(tokenStr)
                 .map(t -> new BookmarkInfo(t.getBookName(), t.getChapterTitle(), t.getUrl(), LocalDateTime.now()))
                 .orElse(null);
     }
 
-    @Retryable(value = Exception.class, maxAttempts = 3, backoff = @Backoff(delay = 1000))
+    /**
+     * 同一用户同一页面只保留一条书签，重复保存只更新时间
+     */
     public void saveBookmarkForUser(Long userId, BookmarkInfo info) {
-        UserBookmark bookmark = new UserBookmark();
-        bookmark.setUserId(userId);
-        bookmark.setBookName(info.getBookName());
-        bookmark.setChapterTitle(info.getChapterTitle());
-        bookmark.setUrl(info.getUrl());
-        bookmark.setCreateTime(info.getUpdateTime());
-        bookmark.setUpdateTime(info.getUpdateTime());
-        bookmarkRepo.save(bookmark);
-    }
-
-    public List<BookmarkService.BookmarkInfo> getUserBookmarks(Long userId) {
-        List<BookmarkService.BookmarkInfo> allBookmarks = new ArrayList<>();
-        List<UserBookmark> byUserIdOrderByUpdateTimeDesc = bookmarkRepo.findByUserIdOrderByUpdateTimeDesc(userId);
-        for (UserBookmark userBookmark : byUserIdOrderByUpdateTimeDesc) {
-            allBookmarks.add(new BookmarkInfo(userBookmark.getBookName(), userBookmark.getChapterTitle(), userBookmark.getUrl(), userBookmark.getUpdateTime()));
+        LocalDateTime time = info.getUpdateTime() != null ? info.getUpdateTime() : LocalDateTime.now();
+        bookmarkWriteBuffer.save(new BookmarkWriteBuffer.PendingBookmark(
+                userId, info.getBookName(), info.getChapterTitle(), info.getUrl(), time));
+    }
+
+    /**
+     * 键集分页的一页
+     *
+     * @param position 本页第一条在整个列表中的序号（从 0 开始），只用于显示编号
+     */
+    public record KeysetPage<T>(List<T> items, long position, boolean hasPrev, boolean hasNext) {
+    }
+
+    /**
+     * 用户书签分页，最近更新的在前。anchorId 为空时取第一页；
+     * before 为 false 时取锚点之后的一页，为 true 时取锚点之前的一页
+     */
+    public KeysetPage<UserBookmark> pageUserBookmarks(Long userId, Long anchorId, boolean before, long position, int size) {
+        bookmarkWriteBuffer.flushUser(userId);
+        return readOnlyTx.execute(status -> readPageUserBookmarks(userId, anchorId, before, position, size));
+    }
+
+    private KeysetPage<UserBookmark> readPageUserBookmarks(Long userId, Long anchorId, boolean before, long position, int size) {
+        return keysetPage(anchorId != null, before, position, size,
+                limit -> bookmarkRepo.findByUserIdOrderByUpdateTimeDescIdDesc(userId, PageRequest.of(0, limit)),
+                limit -> bookmarkRepo.findPageAfterBookmark(userId, anchorId, limit),
+                limit -> bookmarkRepo.findPageBeforeBookmark(userId, anchorId, limit));
+    }
+
+    /**
+     * 书籍列表分页，按 (title, bookId) 排序，参数含义同 pageUserBookmarks
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<Book> pageBooks(String anchorBookId, boolean before, long position, int size) {
+        return keysetPage(anchorBookId != null, before, position, size,
+                limit -> bookRepo.findAllByOrderByTitleAscBookIdAsc(PageRequest.of(0, limit)),
+                limit -> bookRepo.findPageAfterBook(anchorBookId, limit),
+                limit -> bookRepo.findPageBeforeBook(anchorBookId, limit));
+    }
+
+    /**
+     * 每次多取一条判断另一侧是否还有数据；锚点已被删除（查询为空）时回到第一页
+     */
+    private <T> KeysetPage<T> keysetPage(boolean hasAnchor, boolean before, long position, int size,
+                                         IntFunction<List<T>> first,
+                                         IntFunction<List<T>> after,
+                                         IntFunction<List<T>> beforeAnchor) {
+        size = Math.max(1, Math.min(size, 50));
+        if (hasAnchor && before) {
+            List<T> rows = new ArrayList<>(beforeAnchor.apply(size + 1));
+            if (!rows.isEmpty()) {
+                boolean hasPrev = rows.size() > size;
+                List<T> items = new ArrayList<>(rows.subList(0, Math.min(size, rows.size())));
+                Collections.reverse(items);
+                return new KeysetPage<>(items, hasPrev ? Math.max(position, 1) : 0, hasPrev, true);
+            }
+        } else if (hasAnchor) {
+            List<T> rows = after.apply(size + 1);
+            if (!rows.isEmpty()) {
+                boolean hasNext = rows.size() > size;
+                return new KeysetPage<>(rows.subList(0, Math.min(size, rows.size())), Math.max(position, 1), true, hasNext);
+            }
         }
+        List<T> rows = first.apply(size + 1);
+        return new KeysetPage<>(rows.subList(0, Math.min(size, rows.size())), 0, false, rows.size() > size);
+    }
 
-        return allBookmarks;
+    /**
+     * 按书分组的书签分页，分组、计数、每组截取都在数据库完成：
+     * 每页 size 本书，每本书带书签总数和最近 perBook 条。
+     *
+     * @return groups / totalBookmarks / totalPages / currentPage / pageBookmarkCount
+     */
+    public Map<String, Object> getUserBookmarkGroups(Long userId, int page, int size, int perBook) {
+        bookmarkWriteBuffer.flushUser(userId);
+        return readOnlyTx.execute(status -> readGetUserBookmarkGroups(userId, page, size, perBook));
+    }
+
+    private Map<String, Object> readGetUserBookmarkGroups(Long userId, int page, int size, int perBook) {
+        size = Math.max(1, Math.min(size, 50));
+        perBook = Math.max(1, Math.min(perBook, 50));
+
+        Page<Object[]> groupPage = bookmarkRepo.findBookGroups(userId, PageRequest.of(Math.max(page, 0), size));
+        if (groupPage.getNumber() >= groupPage.getTotalPages() && groupPage.getTotalPages() > 0) {
+            groupPage = bookmarkRepo.findBookGroups(userId, PageRequest.of(groupPage.getTotalPages() - 1, size));
+        }
+
+        List<String> bookNames = new ArrayList<>();
+        boolean hasUnnamed = false;
+        for (Object[] row : groupPage.getContent()) {
+            if (row[0] == null) {
+                hasUnnamed = true;
+            } else {
+                bookNames.add((String) row[0]);
+            }
+        }
+
+        Map<String, List<Map<String, String>>> latest = new HashMap<>();
+        if (!bookNames.isEmpty()) {
+            for (UserBookmark b : bookmarkRepo.findLatestPerBook(userId, bookNames, perBook)) {
+                latest.computeIfAbsent(b.getBookName(), k -> new ArrayList<>()).add(toBookmarkMap(b));
+            }
+        }
+        if (hasUnnamed) {
+            latest.put(null, bookmarkRepo.findByUserIdAndBookNameIsNullOrderByUpdateTimeDescIdDesc(userId, PageRequest.of(0, perBook))
+                    .map(this::toBookmarkMap).getContent());
+        }
+
+        List<Map<String, Object>> groups = new ArrayList<>();
+        int pageBookmarkCount = 0;
+        for (Object[] row : groupPage.getContent()) {
+            String bookName = (String) row[0];
+            List<Map<String, String>> bookmarks = latest.getOrDefault(bookName, List.of());
+            Map<String, Object> group = new LinkedHashMap<>();
+            group.put("bookName", bookName != null ? bookName : "未知书籍");
+            group.put("bookmarks", bookmarks);
+            group.put("count", ((Number) row[1]).intValue());
+            groups.add(group);
+            pageBookmarkCount += bookmarks.size();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("groups", groups);
+        result.put("totalBookmarks", bookmarkRepo.countByUserId(userId));
+        result.put("totalPages", groupPage.getTotalPages());
+        result.put("currentPage", groupPage.getNumber());
+        result.put("pageBookmarkCount", pageBookmarkCount);
+        return result;
+    }
+
+    /**
+     * 单本书的书签分页，用于展开分组中未显示的较早书签
+     */
+    public Map<String, Object> getUserBookmarksOfBook(Long userId, String bookName, int page, int size) {
+        bookmarkWriteBuffer.flushUser(userId);
+        return readOnlyTx.execute(status -> readGetUserBookmarksOfBook(userId, bookName, page, size));
+    }
+
+    private Map<String, Object> readGetUserBookmarksOfBook(Long userId, String bookName, int page, int size) {
+        PageRequest pageable = PageRequest.of(Math.max(page, 0), Math.max(1, Math.min(size, 50)));
+        Page<UserBookmark> result = bookName == null || "未知书籍".equals(bookName)
+                ? bookmarkRepo.findByUserIdAndBookNameIsNullOrderByUpdateTimeDescIdDesc(userId, pageable)
+                : bookmarkRepo.findByUserIdAndBookNameOrderByUpdateTimeDescIdDesc(userId, bookName, pageable);
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("list", result.map(this::toBookmarkMap).getContent());
+        map.put("totalElements", result.getTotalElements());
+        map.put("totalPages", result.getTotalPages());
+        return map;
+    }
+
+    private Map<String, String> toBookmarkMap(UserBookmark bookmark) {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("bookName", bookmark.getBookName());
+        map.put("chapterTitle", bookmark.getChapterTitle());
+        map.put("url", bookmark.getUrl());
+        return map;
     }
 
-    @Transactional
     public void clearBookmarks(Long userId) {
-        bookmarkRepo.deleteByUserId(userId);
+        bookmarkWriteBuffer.discard(userId, null);
+        sqliteWriter.run(() -> bookmarkRepo.deleteByUserId(userId));
     }
 
-    @Transactional
     public boolean deleteBookmarkForUser(Long userId, String url) {
         try {
-            bookmarkRepo.deleteByUserIdAndUrl(userId, url);
+            bookmarkWriteBuffer.discard(userId, url);
+            sqliteWriter.run(() -> bookmarkRepo.deleteByUserIdAndUrl(userId, url));
             return true;
         } catch (Exception e) {
             log.error("删除书签失败", e);
@@ -123,52 +309,114 @@ public class BookmarkService {
         }
     }
 
-    public String findAllBooks() {
-        List<BookmarkToken> books = tokenRepo.findAllFirstChapters();
+    /**
+     * 书籍列表分页。无搜索词时由数据库按 (title, bookId) 排序分页：
+     * 带 cursor 走键集分页，否则按 page 走 offset（兼容页码跳转）；搜索仍走内存索引。
+     *
+     * @return books / totalCount / totalPages / currentPage / nextCursor
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> listBooks(String cursor, int page, int size, String searchTerm) {
+        size = Math.max(1, Math.min(size, 100));
+        Map<String, Object> result = new HashMap<>();
 
-        StringBuilder sb = new StringBuilder("🔖 **书籍列表:**\n\n");
-        AtomicInteger index = new AtomicInteger(1);
+        if (searchTerm != null && !searchTerm.isBlank()) {
+            List<Map<String, String>> matched = searchBooks(searchTerm);
+            int totalCount = matched.size();
+            int totalPages = (totalCount + size - 1) / size;
+            page = Math.max(0, Math.min(page, Math.max(totalPages - 1, 0)));
+            int from = Math.min(page * size, totalCount);
+            result.put("books", matched.subList(from, Math.min(from + size, totalCount)));
+            result.put("totalCount", totalCount);
+            result.put("totalPages", totalPages);
+            result.put("currentPage", page);
+            result.put("nextCursor", null);
+            return result;
+        }
 
-        // 按书名排序
-        books.stream()
-                .sorted(Comparator.comparing(BookmarkToken::getBookName))
-                .forEach(book ->
-                        sb.append(index.getAndIncrement())
-                                .append(". [").append(book.getBookName()).append("](").append(book.getUrl()).append(")\n")
-                );
+        long totalCount = bookCatalogCache.getBookCount();
+        int totalPages = (int) ((totalCount + size - 1) / size);
 
-        if (books.isEmpty()) {
-            return "暂无书籍数据。";
+        BookCursor after = BookCursor.decode(cursor);
+        List<Book> books;
+        long offset;
+        if (after != null) {
+            books = bookRepo.findPageAfter(after.title(), after.bookId(), size);
+            offset = after.position();
+            page = (int) (offset / size);
+        } else {
+            page = Math.max(0, Math.min(page, Math.max(totalPages - 1, 0)));
+            offset = (long) page * size;
+            books = bookRepo.findAllByOrderByTitleAscBookIdAsc(PageRequest.of(page, size));
         }
-        return sb.toString();
-    }
 
-    public List<Map<String, String>> getAllBooksStructuredWithSearch(String searchTerm) {
-        List<BookmarkToken> tokens;
+        List<Map<String, String>> list = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            Book b = books.get(i);
+            Map<String, String> book = new HashMap<>();
+            book.put("id", "book_" + (offset + i + 1));
+            book.put("name", b.getTitle());
+            book.put("url", b.getFirstPageUrl());
+            book.put("firstPageTitle", b.getTitle() + " (1)");
+            list.add(book);
+        }
 
-        if (searchTerm != null && !searchTerm.isBlank()) {
-            tokens = tokenRepo.searchBooks(searchTerm);
-        } else {
-            tokens = tokenRepo.findAllFirstChapters();
+        String nextCursor = null;
+        if (books.size() == size && offset + size < totalCount) {
+            Book last = books.get(books.size() - 1);
+            nextCursor = new BookCursor(last.getTitle(), last.getBookId(), offset + size).encode();
         }
 
-        List<Map<String, String>> books = new ArrayList<>();
-        AtomicInteger index = new AtomicInteger(1);
+        result.put("books", list);
+        result.put("totalCount", totalCount);
+        result.put("totalPages", totalPages);
+        result.put("currentPage", page);
+        result.put("nextCursor", nextCursor);
+        return result;
+    }
 
-        Set<String> processedBooks = new TreeSet<>();
+    /**
+     * 分页游标：上一页最后一本书的 (title, bookId) 以及已翻过的条数，base64url 编码后对前端不透明
+     */
+    private record BookCursor(String title, String bookId, long position) {
 
-        for (BookmarkToken t : tokens) {
-            if (processedBooks.contains(t.getBookName())) continue;
+        String encode() {
+            String raw = title + '\u0000' + bookId + '\u0000' + position;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static BookCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\u0000", -1);
+                if (parts.length != 3) {
+                    return null;
+                }
+                return new BookCursor(parts[0], parts[1], Long.parseLong(parts[2]));
+            } catch (IllegalArgumentException e) {
+                log.warn("无效的分页游标: {}", cursor);
+                return null;
+            }
+        }
+    }
 
+    /**
+     * 走内存书名索引，结果已按相关度排序
+     */
+    private List<Map<String, String>> searchBooks(String searchTerm) {
+        List<Map<String, String>> books = new ArrayList<>();
+        AtomicInteger index = new AtomicInteger(1);
+        for (BookSearchIndex.Entry e : bookSearchIndex.search(searchTerm)) {
             Map<String, String> book = new HashMap<>();
             book.put("id", "book_" + index.getAndIncrement());
-            book.put("name", t.getBookName());
-            book.put("url", t.getUrl());
-            book.put("firstPageTitle", t.getChapterTitle());
+            book.put("name", e.bookName());
+            book.put("url", e.url());
+            book.put("firstPageTitle", e.firstPageTitle());
             books.add(book);
-            processedBooks.add(t.getBookName());
         }
-
         return books;
     }
 
@@ -186,106 +434,77 @@ public class BookmarkService {
     }
 
     public String findTokenByPage(String bookId, int pageIndex) {
-        String suffixRead = "/read/" + bookId + "/" + pageIndex;
-        String suffixBooks = "/books/" + bookId + "/" + pageIndex;
-        return tokenRepo.findByBookIdDual(suffixRead, suffixBooks)
-                .stream()
-                .findFirst()
-                .map(BookmarkToken::getToken)
-                .orElse(null);
-    }
-
-    @Transactional
-    public boolean deleteBook(String bookName, Long userId) {
-        try {
-            if (admins.isEmpty() || admins.contains(String.valueOf(userId))) {
-
-                try {
-                    BookmarkToken token = tokenRepo.findFirstByBookName(bookName);
-
-                    if (token != null && token.getUrl() != null) {
-                        log.info("book token url: [{}]", token.getUrl());
-                        String bookId = extractBookIdFromUrlFromLocalDB(token.getUrl());
-                        if (bookId != null) {
-                            log.info("正在删除本地书籍文件, BookName: {}, BookId: {}", bookName, bookId);
-                            localBookService.deleteBookDirectory(bookId);
-                        } else {
-                            bookId = extractBookIdFromUrlFromR2(token.getUrl());
-                            log.info("正在删除R2书籍文件, BookName: {}, BookId: {}", bookName, bookId);
-                            r2StorageService.deleteFolder("books/" + bookId);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("删除文件失败，但继续删除数据库记录", e);
-                }
-                tokenRepo.deleteByBookName(bookName);
-                return true;
-            } else {
-                return false;
-            }
-        } catch (CannotAcquireLockException e) {
-            log.error("database is locked!");
+        String signed = pageTokenCodec.encode(bookId, pageIndex);
+        if (signed != null) {
+            return signed;
         }
-        return false;
+        BookmarkToken token = tokenRepo.findFirstByBookIdAndPageIndex(bookId, pageIndex);
+        return token != null ? token.getToken() : null;
     }
 
-    private String extractBookIdFromUrlFromLocalDB(String url) {
-        try {
-            Pattern pattern = Pattern.compile("/read/([^/]+)/");
-            Matcher matcher = pattern.matcher(url);
-            if (matcher.find()) {
-                return matcher.group(1);
-            }
-        } catch (Exception e) {
-            log.warn("extractBookIdFromUrlFromLocalDB 解析 BookId 失败: {}", url);
+    /**
+     * 删除书籍：数据库记录立即删除，存储文件由后台任务清理
+     *
+     * @return 删除任务，无权删除时返回 null
+     */
+    public DeletionJob deleteBook(String bookName, Long userId) {
+        if (!admins.isEmpty() && !admins.contains(String.valueOf(userId))) {
+            return null;
         }
-        return null;
-    }
-
-    private String extractBookIdFromUrlFromR2(String url) {
-        try {
-            Pattern pattern = Pattern.compile("/books/([^/]+)/");
-            Matcher matcher = pattern.matcher(url);
-            if (matcher.find()) {
-                return matcher.group(1);
-            }
-        } catch (Exception e) {
-            log.warn("extractBookIdFromUrlFromR2 解析 BookId 失败: {}", url);
-        }
-        return null;
+        DeletionJob job = bookDeletionService.submit(bookName);
+        bookSearchIndex.remove(bookName);
+        return job;
     }
 
     public int getTotalPages(String bookId) {
-        String readPath = "/read/" + bookId + "/";
-        String booksPath = "/books/" + bookId + "/";
-        return tokenRepo.countByBookIdDual(readPath, booksPath);
+        Book book = findBookById(bookId);
+        if (book != null && book.getPageCount() != null) {
+            return book.getPageCount();
+        }
+        return tokenRepo.countByBookId(bookId);
     }
 
-    public BookmarkToken findFirstByUrlContaining(String bookId) {
-        String readPath = "/read/" + bookId + "/";
-        String booksPath = "/books/" + bookId + "/";
-        // 使用新的查询方法获取第一条记录（通常用于获取书名）
-        Page<BookmarkToken> page = tokenRepo.findByBookIdDual(readPath, booksPath, PageRequest.of(0, 1));
-        return page.hasContent() ? page.getContent().get(0) : null;
+    public Book findBookById(String bookId) {
+        return bookCatalogCache.getBook(bookId);
     }
 
+    @Transactional(readOnly = true)
     public Map<String, Object> getBookPages(String bookId, int page, int size) {
-        String searchPath = "/read/" + bookId + "/";
-        String booksPath = "/books/" + bookId + "/"; // 新模式 (R2)
+        page = Math.max(page, 0);
+        size = Math.min(Math.max(size, 1), 100);
+        Book book = findBookById(bookId);
+        if (book != null && book.getPageCount() != null && book.getFirstPageUrl() != null) {
+            // 页面地址由目录推导，不再逐页查 bookmark_tokens
+            int total = book.getPageCount();
+            int from = (int) Math.min((long) page * size, total);
+            int to = Math.min(from + size, total);
+            List<Map<String, Object>> list = new ArrayList<>(to - from);
+            for (int i = from + 1; i <= to; i++) {
+                Map<String, Object> map = new HashMap<>();
+                map.put("title", book.getTitle() + " (" + i + ")");
+                map.put("url", buildPageUrl(book, i));
+                map.put("page", i);
+                list.add(map);
+            }
 
+            Map<String, Object> result = new HashMap<>();
+            result.put("list", list);
+            result.put("totalElements", (long) total);
+            result.put("totalPages", (total + size - 1) / size);
+            return result;
+        }
 
-        Page<BookmarkToken> pageResult = tokenRepo.findByBookIdDual(searchPath, booksPath, PageRequest.of(page, size));
+        Page<BookmarkToken> pageResult = tokenRepo.findByBookIdOrderByPageIndexAsc(bookId, PageRequest.of(page, size));
 
         List<Map<String, Object>> list = pageResult.getContent().stream()
                 .map(t -> {
                     Map<String, Object> map = new HashMap<>();
                     map.put("title", t.getChapterTitle());
                     map.put("url", t.getUrl());
-                    map.put("page", extractPageIndexFromUrl(t.getUrl()));
+                    map.put("page", t.getPageIndex());
                     return map;
                 })
-                .sorted(Comparator.comparingInt(m -> (Integer) m.get("page")))
-                .collect(Collectors.toList());
+                .toList();
 
         Map<String, Object> result = new HashMap<>();
         result.put("list", list);
@@ -294,30 +513,52 @@ public class BookmarkService {
         return result;
     }
 
-    private int extractPageIndexFromUrl(String url) {
-        try {
-            Pattern pattern = Pattern.compile("/(\\d+)(\\.html)?$");
+    /**
+     * 由第一页地址推导任意页地址：R2 为 .../{bookId}/{page}.html，本地为 /read/{bookId}/{page}
+     */
+    public String buildPageUrl(Book book, int pageIndex) {
+        String first = book.getFirstPageUrl();
+        String base = first.substring(0, first.lastIndexOf('/') + 1);
+        return book.getStorageKind() == StorageKind.LOCAL ? base + pageIndex : base + pageIndex + ".html";
+    }
 
-            Matcher matcher = pattern.matcher(url);
-            if (matcher.find()) {
-                return Integer.parseInt(matcher.group(1));
-            }
+    /**
+     * @return 已入库书籍的第一页地址，不存在时返回 null
+     */
+    public String findFirstPageUrl(String bookName) {
+        Book book = bookRepo.findFirstByTitle(bookName);
+        return book != null ? book.getFirstPageUrl() : null;
+    }
 
-            Pattern patternOld = Pattern.compile("/(\\d+)(/|$)");
-            Matcher matcherOld = patternOld.matcher(url);
-            if (matcherOld.find()) {
-                return Integer.parseInt(matcherOld.group(1));
-            }
-        } catch (Exception ignore) {
+    /**
+     * 上传 books/{bookId}/meta.json，静态页面打开时从这里读取书名，重命名只需更新这一个文件
+     *
+     * @return meta.json 的公开地址，上传失败时返回 null
+     */
+    public String publishBookMeta(String bookId, String title, int pageCount) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(Map.of("title", title, "pageCount", pageCount));
+            return storageBackend.put("books/" + bookId + "/meta.json", json,
+                    "application/json; charset=utf-8", "no-cache");
+        } catch (Exception e) {
+            log.error("上传书籍元数据失败: [{}] {}", bookId, title, e);
+            return null;
         }
-        return 0;
     }
 
-    public BookmarkToken findBook(String bookName) {
-        return tokenRepo.findFirstBookByBookName(bookName);
+    /**
+     * 第一页是否会在打开时读取 meta.json；读取失败时按旧页面处理，改写是幂等的
+     */
+    private boolean pagesReadMeta(Book book) {
+        try {
+            byte[] first = storageBackend.get("books/" + book.getBookId() + "/1.html");
+            return first != null && new String(first, StandardCharsets.UTF_8).contains("meta.json");
+        } catch (Exception e) {
+            log.warn("读取第一页失败, 按旧页面处理: {}", book.getBookId(), e);
+            return false;
+        }
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public void renameBook(String userId, String oldName, String newName) {
         log.info("用户 [{}] 请求重命名书籍: [{}] -> [{}]", userId, oldName, newName);
 
@@ -326,48 +567,47 @@ public class BookmarkService {
                 throw new IllegalArgumentException("书名不能为空");
             }
 
-            if (!tokenRepo.existsByBookName(oldName)) {
+            Book book = bookRepo.findFirstByTitle(oldName);
+            if (book == null && !tokenRepo.existsByBookName(oldName)) {
                 throw new IllegalArgumentException("书籍 [" + oldName + "] 不存在，无法重命名");
             }
 
-            if (tokenRepo.existsByBookName(newName)) {
+            if (bookRepo.existsByTitle(newName) || tokenRepo.existsByBookName(newName)) {
                 throw new IllegalArgumentException("书名 [" + newName + "] 已存在，请使用其他名称");
             }
 
-            List<BookmarkToken> tokens = tokenRepo.findAllByBookName(oldName);
-
-            for (BookmarkToken token : tokens) {
-                token.setBookName(newName);
-
-                String oldTitle = token.getChapterTitle();
-                if (oldTitle != null) {
-                    Matcher matcher = TITLE_PARSER.matcher(oldTitle);
-
-                    if (matcher.matches()) {
-                        String suffix = matcher.group(2);
-                        token.setChapterTitle(newName + suffix);
-                    } else {
-                        token.setChapterTitle(newName);
+            // 只改元数据：页面标题由静态页打开时读取 meta.json 决定，不再逐页下载改写上传
+            sqliteWriter.run(() -> {
+                tokenRepo.renameChapterTitles(oldName, newName);
+                tokenRepo.updateBookName(oldName, newName);
+                if (book != null) {
+                    book.setTitle(newName);
+                    bookRepo.save(book);
+                }
+                eventPublisher.publishEvent(new BookChangedEvent(BookChangedEvent.Type.RENAMED,
+                        book != null ? book.getBookId() : null, newName));
+            });
+            bookSearchIndex.rename(oldName, newName, newName + " (1)");
+
+            if (book != null && book.getStorageKind() == storageBackend.kind()) {
+                String metaUrl = publishBookMeta(book.getBookId(), newName, book.getPageCount() != null ? book.getPageCount() : 0);
+                if (book.getStorageKind() == StorageKind.R2) {
+                    if (metaUrl != null) {
+                        cloudflareService.purgeCache(metaUrl);
+                    }
+                    // 早于 meta.json 入库的页面不会读取它，只能逐页改写才能显示新书名
+                    if (rewritePages || !pagesReadMeta(book)) {
+                        int pageCount = getTotalPages(book.getBookId());
+                        List<String> urls = new ArrayList<>(pageCount);
+                        for (int i = 1; i <= pageCount; i++) {
+                            urls.add(buildPageUrl(book, i));
+                        }
+                        bookPageRewriter.rewriteTitles(urls, newName);
                     }
                 }
-                // 如果一本书有 2000 页，你需要执行 2000 次下载 + 2000 次上传。
-                // 该功能可能会消耗大量的网络带宽和 R2 的操作次数，不过一般书籍最多几百页，也不是特别多，免费版完全够用。
-                String key = extractKeyByRegex(token.getUrl());
-                r2StorageService.updateHtmlTitle(key, newName);
-                cloudflareService.purgeCache(token.getUrl());
             }
-            tokenRepo.saveAll(tokens);
         } else {
             throw new IllegalArgumentException("无权修改！");
         }
     }
-
-    private String extractKeyByRegex(String fullUrl) {
-        Pattern pattern = Pattern.compile("(books/.*)");
-        Matcher matcher = pattern.matcher(fullUrl);
-        if (matcher.find()) {
-            return matcher.group(1);
-        }
-        return null;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.repository.UserBookmarkRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 书签写入。开启 write-behind 时先放入内存缓冲，同一用户同一页面的多次保存合并为一次，
+ * 由定时任务在一个事务中批量 upsert，关闭应用前再刷一次；未开启时直接 upsert。
+ * upsert 依赖 (user_id, url) 唯一索引，因此在 UserBookmarkMigration 之后初始化。
+ */
+@Slf4j
+@Component
+@DependsOn("userBookmarkMigration")
+@RequiredArgsConstructor
+public class BookmarkWriteBuffer {
+
+    private final UserBookmarkRepository bookmarkRepo;
+    private final SqliteWriter sqliteWriter;
+
+    @Value("${app.bookmark.write-behind.enabled:false}")
+    private boolean enabled;
+
+    // 缓冲过大时不再等定时任务，直接在当前线程刷盘
+    @Value("${app.bookmark.write-behind.max-pending:5000}")
+    private int maxPending;
+
+    private final Map<Key, PendingBookmark> pending = new ConcurrentHashMap<>();
+
+    private record Key(Long userId, String url) {
+    }
+
+    public record PendingBookmark(Long userId, String bookName, String chapterTitle, String url, LocalDateTime time) {
+    }
+
+    public void save(PendingBookmark bookmark) {
+        if (!enabled) {
+            write(List.of(bookmark));
+            return;
+        }
+        pending.merge(new Key(bookmark.userId(), bookmark.url()), bookmark,
+                (old, now) -> now.time().isBefore(old.time()) ? old : now);
+        if (pending.size() >= maxPending) {
+            flush();
+        }
+    }
+
+    /**
+     * 读取某个用户的书签前调用，保证能读到自己刚保存的内容
+     */
+    public void flushUser(Long userId) {
+        if (pending.keySet().stream().anyMatch(k -> Objects.equals(k.userId(), userId))) {
+            flush();
+        }
+    }
+
+    /**
+     * 删除书签前丢弃尚未落库的同一条记录，避免稍后刷盘又写回来
+     */
+    public void discard(Long userId, String url) {
+        if (url == null) {
+            pending.keySet().removeIf(k -> Objects.equals(k.userId(), userId));
+        } else {
+            pending.remove(new Key(userId, url));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.bookmark.write-behind.flush-interval-ms:2000}")
+    public void scheduledFlush() {
+        if (!pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!pending.isEmpty()) {
+            log.info("应用关闭, 写入缓冲中的 {} 条书签", pending.size());
+            flush();
+        }
+    }
+
+    public synchronized int flush() {
+        List<PendingBookmark> batch = new ArrayList<>(pending.size());
+        for (Key key : List.copyOf(pending.keySet())) {
+            PendingBookmark b = pending.remove(key);
+            if (b != null) {
+                batch.add(b);
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            write(batch);
+            log.debug("书签批量写入 {} 条", batch.size());
+            return batch.size();
+        } catch (Exception e) {
+            // 放回缓冲等下次刷盘，期间有更新的保存则以新的为准
+            for (PendingBookmark b : batch) {
+                pending.putIfAbsent(new Key(b.userId(), b.url()), b);
+            }
+            log.error("书签批量写入失败, {} 条留待重试", batch.size(), e);
+            return 0;
+        }
+    }
+
+    private void write(List<PendingBookmark> batch) {
+        sqliteWriter.run(() -> {
+            for (PendingBookmark b : batch) {
+                bookmarkRepo.upsert(b.userId(), b.bookName(), b.chapterTitle(), b.url(), b.time());
+            }
+        });
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+}
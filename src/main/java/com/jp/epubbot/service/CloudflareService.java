@@ -1,6 +1,15 @@
 package com.jp.epubbot.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Service;
@@ -9,24 +18,102 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Author: J.P
  * @Date: 2026/1/26 13:24
+ * <p>
+ * 清除缓存请求先进入队列，由后台线程按 Zone 合并成批量请求发送，
+ * 发送前经过令牌桶限速，遇到 429 按 Retry-After 退避后重试。
  */
 
 @Service
 @ConfigurationProperties(prefix = "cloudflare")
-@Data
+@RequiredArgsConstructor
 @Slf4j
 public class CloudflareService {
+    // 只有配置项带 getter / setter，队列等运行时状态不参与配置绑定
+    @Getter
+    @Setter
     private String apiToken;
 
+    @Getter
+    @Setter
     private Map<String, String> zones;
 
-    private static final String CF_API_URL_TEMPLATE = "https://api.cloudflare.com/client/v4/zones/%s/purge_cache";
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    // 可指向本地的模拟服务，便于联调
+    @Getter
+    @Setter
+    private String apiBaseUrl = "https://api.cloudflare.com/client/v4";
+
+    @Getter
+    @Setter
+    private Purge purge = new Purge();
+
+    @Data
+    public static class Purge {
+        // 单次请求最多携带的 URL / 前缀数
+        private int batchSize = 30;
+        // 首个请求入队后等待多久再发送，让同一批操作的 URL 合并
+        private Duration linger = Duration.ofMillis(500);
+        private double ratePerSecond = 4;
+        private int burst = 10;
+        private int maxAttempts = 5;
+        // 删除书籍时的清除方式：none / prefix。R2 公开桶的响应不带 Cache-Tag，不支持按标签清除
+        private String bookMode = "none";
+    }
+
+    private enum Kind {
+        FILES("files"), PREFIXES("prefixes");
+
+        final String field;
+
+        Kind(String field) {
+            this.field = field;
+        }
+    }
+
+    private record Batch(String zoneId, Kind kind, List<String> items) {
+    }
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MeterRegistry meterRegistry;
+
+    // zoneId -> 类型 -> 待清除项，同一项重复入队只保留一次
+    private final Map<String, Map<Kind, Set<String>>> pending = new LinkedHashMap<>();
+    private int pendingCount;
+    private TokenBucket bucket;
+    private Thread worker;
+    // 按 kind|status 缓存的指标，避免每次请求都构建并查找
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+    private final Map<Kind, Counter> purgedItems = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        bucket = new TokenBucket(purge.getRatePerSecond(), Math.max(1, purge.getBurst()));
+        worker = new Thread(this::loop, "cf-purge");
+        worker.setDaemon(true);
+        worker.start();
+    }
 
     /**
      * 根据 URL 自动识别域名，找到对应的 Zone ID 进行清除
@@ -34,38 +121,238 @@ public class CloudflareService {
     public void purgeCache(String fileUrl) {
         try {
             String host = URI.create(fileUrl).getHost();
-            String zoneId = zones.get(host);
-            if (zoneId == null) {
-                log.error("未找到域名 [{}] 对应的 Cloudflare Zone ID，跳过清除缓存。", host);
-                return;
+            String zoneId = zoneOf(host);
+            if (zoneId != null) {
+                enqueue(zoneId, Kind.FILES, fileUrl);
             }
-            sendPurgeRequest(zoneId, fileUrl);
         } catch (Exception e) {
             log.error("purgeCache error: [{}]", e.toString());
         }
     }
 
-    private void sendPurgeRequest(String zoneId, String fileUrl) {
+    /**
+     * 按前缀清除，prefix 形如 "book.example.com/books/abc/"，不带协议
+     */
+    public void purgePrefix(String host, String prefix) {
+        String zoneId = zoneOf(host);
+        if (zoneId != null) {
+            enqueue(zoneId, Kind.PREFIXES, prefix);
+        }
+    }
+
+    /**
+     * 删除书籍后按配置清除整本书的缓存
+     *
+     * @param anyPageUrl 书中任意一页的地址，用来确定域名
+     */
+    public void purgeBook(String anyPageUrl, String bookId) {
+        if (anyPageUrl == null || bookId == null) {
+            return;
+        }
         try {
-            String url = String.format(CF_API_URL_TEMPLATE, zoneId);
-            String jsonBody = String.format("{\"files\": [\"%s\"]}", fileUrl);
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Authorization", "Bearer " + apiToken)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                log.info("成功清除缓存 [{}]: {}", zoneId, fileUrl);
-            } else {
-                log.error("清除缓存失败 [{}]: {}", zoneId, response.body());
+            String host = URI.create(anyPageUrl).getHost();
+            switch (purge.getBookMode()) {
+                case "prefix" -> purgePrefix(host, host + "/books/" + bookId + "/");
+                case "none" -> {
+                }
+                default -> log.warn("不支持的 cloudflare.purge.book-mode: {}", purge.getBookMode());
             }
         } catch (Exception e) {
-            log.error("sendPurgeRequest error: [{}]", e.toString());
+            log.error("purgeBook error: [{}]", e.toString());
+        }
+    }
+
+    public synchronized int pendingCount() {
+        return pendingCount;
+    }
+
+    private String zoneOf(String host) {
+        String zoneId = zones != null ? zones.get(host) : null;
+        if (zoneId == null) {
+            log.error("未找到域名 [{}] 对应的 Cloudflare Zone ID，跳过清除缓存。", host);
+        }
+        return zoneId;
+    }
+
+    private synchronized void enqueue(String zoneId, Kind kind, String item) {
+        if (pending.computeIfAbsent(zoneId, z -> new HashMap<>())
+                .computeIfAbsent(kind, k -> new LinkedHashSet<>())
+                .add(item)) {
+            pendingCount++;
+            notifyAll();
+        }
+    }
+
+    private synchronized void requeue(Batch batch) {
+        Set<String> set = pending.computeIfAbsent(batch.zoneId(), z -> new HashMap<>())
+                .computeIfAbsent(batch.kind(), k -> new LinkedHashSet<>());
+        for (String item : batch.items()) {
+            if (set.add(item)) {
+                pendingCount++;
+            }
+        }
+    }
+
+    private synchronized Batch takeBatch() {
+        Iterator<Map.Entry<String, Map<Kind, Set<String>>>> zoneIt = pending.entrySet().iterator();
+        while (zoneIt.hasNext()) {
+            Map.Entry<String, Map<Kind, Set<String>>> zone = zoneIt.next();
+            Iterator<Map.Entry<Kind, Set<String>>> kindIt = zone.getValue().entrySet().iterator();
+            while (kindIt.hasNext()) {
+                Map.Entry<Kind, Set<String>> entry = kindIt.next();
+                List<String> items = new ArrayList<>(purge.getBatchSize());
+                Iterator<String> it = entry.getValue().iterator();
+                while (it.hasNext() && items.size() < purge.getBatchSize()) {
+                    items.add(it.next());
+                    it.remove();
+                }
+                if (entry.getValue().isEmpty()) {
+                    kindIt.remove();
+                }
+                if (zone.getValue().isEmpty()) {
+                    zoneIt.remove();
+                }
+                if (!items.isEmpty()) {
+                    pendingCount -= items.size();
+                    return new Batch(zone.getKey(), entry.getKey(), items);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void loop() {
+        while (running || pendingCount() > 0) {
+            try {
+                synchronized (this) {
+                    while (pendingCount == 0 && running) {
+                        wait(1000);
+                    }
+                }
+                if (running && !purge.getLinger().isZero()) {
+                    Thread.sleep(purge.getLinger().toMillis());
+                }
+                Batch batch;
+                while ((batch = takeBatch()) != null) {
+                    send(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable t) {
+                log.error("清除缓存线程异常", t);
+            }
+        }
+    }
+
+    /**
+     * 发送过程中（包括等待令牌和退避）被中断时，整批放回队列，关闭时由 stop 统一处理
+     */
+    private void send(Batch batch) throws InterruptedException {
+        try {
+            sendWithRetry(batch);
+        } catch (InterruptedException e) {
+            requeue(batch);
+            throw e;
+        }
+    }
+
+    private void sendWithRetry(Batch batch) throws InterruptedException {
+        for (int attempt = 1; attempt <= purge.getMaxAttempts(); attempt++) {
+            bucket.acquire();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = httpClient.send(buildRequest(batch), HttpResponse.BodyHandlers.ofString());
+                int status = response.statusCode();
+                recordRequest(batch, String.valueOf(status), start);
+                if (status == 200) {
+                    purgedItems.computeIfAbsent(batch.kind(), kind -> Counter.builder("epubbot.cloudflare.purge.items")
+                                    .tag("kind", kind.field)
+                                    .register(meterRegistry))
+                            .increment(batch.items().size());
+                    log.info("成功清除缓存 [{}]: {} 个{}", batch.zoneId(), batch.items().size(), batch.kind().field);
+                    return;
+                }
+                if (status == 429) {
+                    long waitMs = retryAfterMillis(response.headers().firstValue("Retry-After").orElse(null), attempt);
+                    bucket.drain();
+                    if (attempt < purge.getMaxAttempts()) {
+                        log.warn("清除缓存被限流 [{}], {} ms 后重试", batch.zoneId(), waitMs);
+                        Thread.sleep(waitMs);
+                    }
+                    continue;
+                }
+                if (status < 500) {
+                    // 参数或权限错误，重试也不会成功
+                    log.error("清除缓存失败 [{}]: {} {}", batch.zoneId(), status, response.body());
+                    return;
+                }
+                log.warn("清除缓存失败 [{}]: {}, 第 {} 次", batch.zoneId(), status, attempt);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                recordRequest(batch, "io_error", start);
+                log.warn("sendPurgeRequest error: [{}], 第 {} 次", e.toString(), attempt);
+            }
+            if (attempt < purge.getMaxAttempts()) {
+                Thread.sleep(backoffMillis(attempt));
+            }
+        }
+        log.error("清除缓存多次失败，放弃 [{}]: {}", batch.zoneId(), batch.items());
+    }
+
+    private void recordRequest(Batch batch, String status, long startNanos) {
+        requestTimers.computeIfAbsent(batch.kind().field + "|" + status, k -> Timer.builder("epubbot.cloudflare.purge.requests")
+                        .description("Cloudflare 清除缓存请求耗时")
+                        .tag("kind", batch.kind().field)
+                        .tag("status", status)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private HttpRequest buildRequest(Batch batch) throws Exception {
+        String base = apiBaseUrl.endsWith("/") ? apiBaseUrl.substring(0, apiBaseUrl.length() - 1) : apiBaseUrl;
+        String jsonBody = objectMapper.writeValueAsString(Map.of(batch.kind().field, batch.items()));
+        return HttpRequest.newBuilder()
+                .uri(URI.create(base + "/zones/" + batch.zoneId() + "/purge_cache"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + apiToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .build();
+    }
+
+    private long retryAfterMillis(String retryAfter, int attempt) {
+        if (retryAfter != null) {
+            try {
+                return Math.max(0, Long.parseLong(retryAfter.trim())) * 1000;
+            } catch (NumberFormatException ignored) {
+                // 也可能是 HTTP 日期格式
+            }
+            try {
+                long ms = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter.trim(), HTTP_DATE)).toMillis();
+                return Math.max(0, ms);
+            } catch (Exception ignored) {
+                // 无法解析时按指数退避
+            }
+        }
+        return backoffMillis(attempt);
+    }
+
+    private long backoffMillis(int attempt) {
+        return Math.min(60_000L, 1000L << Math.min(attempt - 1, 6));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        worker.join(10_000);
+        if (pendingCount() > 0) {
+            log.warn("清除缓存线程停止时仍有 {} 项未发送", pendingCount());
         }
     }
 }
@@ -0,0 +1,58 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.StorageKind;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 内存存储，用于测试和压测入库流程，不依赖存储桶，重启后数据丢失
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "memory")
+public class InMemoryStorageBackend implements StorageBackend {
+
+    private final ConcurrentSkipListMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+
+    @Override
+    public StorageKind kind() {
+        return StorageKind.MEMORY;
+    }
+
+    @Override
+    public String put(String key, byte[] content, String contentType, String cacheControl) {
+        objects.put(key, content.clone());
+        return publicUrl(key);
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] content = objects.get(key);
+        return content != null ? content.clone() : null;
+    }
+
+    @Override
+    public long deletePrefix(String prefix) {
+        NavigableMap<String, byte[]> range = objects.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        int count = range.size();
+        range.clear();
+        return count;
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        return List.copyOf(objects.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet());
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        return "memory://" + key;
+    }
+
+    public int size() {
+        return objects.size();
+    }
+}
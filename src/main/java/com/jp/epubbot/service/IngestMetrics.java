@@ -0,0 +1,113 @@
+package com.jp.epubbot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 书籍解析指标：每次解析结束后按格式记录总耗时、各阶段耗时、页数 / 字节数和吞吐量。
+ * 阶段耗时在 IngestProgress 里累计，解析过程中不访问 MeterRegistry。
+ */
+@Component
+@RequiredArgsConstructor
+public class IngestMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicInteger active = new AtomicInteger();
+    // 按名称和标签缓存已注册的指标，记录时不再每次构建并查找
+    private final Map<String, Meter> meters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("epubbot.ingest.active", active, AtomicInteger::get)
+                .description("正在解析的书籍数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行一次解析并记录指标，书籍已存在时记为 exists 且不记录阶段耗时
+     */
+    public List<String> record(String format, IngestProgress progress, Callable<List<String>> ingest) throws Exception {
+        active.incrementAndGet();
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            List<String> result = ingest.call();
+            outcome = result.size() == 2 && "exists".equals(result.get(0)) ? "exists" : "success";
+            return result;
+        } finally {
+            progress.enter(null);
+            active.decrementAndGet();
+            long elapsed = System.nanoTime() - start;
+            String outcomeTag = outcome;
+            meter("duration|" + format + "|" + outcome, () -> Timer.builder("epubbot.ingest.duration")
+                    .description("书籍解析总耗时")
+                    .tag("format", format)
+                    .tag("outcome", outcomeTag)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry))
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            if (!"exists".equals(outcome)) {
+                recordPhases(format, progress, elapsed);
+            }
+        }
+    }
+
+    private void recordPhases(String format, IngestProgress progress, long elapsedNanos) {
+        for (IngestProgress.Phase phase : IngestProgress.Phase.values()) {
+            long nanos = progress.phaseNanos(phase);
+            if (nanos > 0) {
+                meter("phase|" + format + "|" + phase, () -> Timer.builder("epubbot.ingest.phase")
+                        .description("书籍解析各阶段耗时")
+                        .tag("format", format)
+                        .tag("phase", phase.name().toLowerCase())
+                        .register(meterRegistry))
+                        .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        long pages = progress.getPages();
+        long bytes = progress.getBytesDownloaded();
+        this.<Counter>meter("pages|" + format, () -> Counter.builder("epubbot.ingest.pages")
+                .tag("format", format)
+                .register(meterRegistry)).increment(pages);
+        this.<Counter>meter("bytes|" + format, () -> Counter.builder("epubbot.ingest.bytes")
+                .baseUnit("bytes")
+                .tag("format", format)
+                .register(meterRegistry)).increment(bytes);
+
+        double seconds = elapsedNanos / 1e9;
+        if (seconds > 0 && pages > 0) {
+            this.<DistributionSummary>meter("pages.per.second|" + format, () -> DistributionSummary.builder("epubbot.ingest.pages.per.second")
+                    .tag("format", format)
+                    .register(meterRegistry))
+                    .record(pages / seconds);
+        }
+        if (seconds > 0 && bytes > 0) {
+            this.<DistributionSummary>meter("bytes.per.second|" + format, () -> DistributionSummary.builder("epubbot.ingest.bytes.per.second")
+                    .baseUnit("bytes")
+                    .tag("format", format)
+                    .register(meterRegistry))
+                    .record(bytes / seconds);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <M extends Meter> M meter(String key, Supplier<M> register) {
+        return (M) meters.computeIfAbsent(key, k -> register.get());
+    }
+}
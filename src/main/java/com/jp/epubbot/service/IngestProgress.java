@@ -0,0 +1,210 @@
+package com.jp.epubbot.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次书籍解析的进度计数。解析线程只做原子自增，
+ * 展示由 IngestProgressReporter 定时读取，不占用解析路径。
+ * 同时按阶段累计耗时，解析结束后由 IngestMetrics 记录。
+ */
+public class IngestProgress {
+
+    public enum Stage {
+        PARSING("解析中"), UPLOADING("等待上传完成"), REGISTERING("登记书籍");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * 已处理量的单位：EPUB 按章节字节，TXT 按字数，PDF 按原始页数
+     */
+    public enum Unit {
+        BYTES, CHARS, PAGES
+    }
+
+    /**
+     * 耗时统计的阶段。阶段可以嵌套，内层阶段的时间不计入外层，各阶段之和即总耗时
+     */
+    public enum Phase {
+        // 读取上传文件的网络流
+        DOWNLOAD,
+        // 解包 / 读取文本 / PDF 提取
+        PARSE,
+        // Jsoup 清洗章节
+        CLEAN,
+        // 分页循环本身
+        PAGINATE,
+        // 套页面模板
+        RENDER,
+        // 解析结束后等待剩余上传
+        UPLOAD,
+        // 登记书籍、写入数据库
+        PERSIST
+    }
+
+    /**
+     * 不需要展示进度时使用
+     */
+    public static IngestProgress none() {
+        return new IngestProgress();
+    }
+
+    private volatile Stage stage = Stage.PARSING;
+    private volatile Unit unit = Unit.BYTES;
+    private volatile long total;
+    private final long startNanos = System.nanoTime();
+    private volatile long lastAdvanceNanos = startNanos;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong pagesUploaded = new AtomicLong();
+    private final AtomicLong images = new AtomicLong();
+    private final AtomicLong imagesUploaded = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+
+    // 以下只由解析线程读写
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private Phase currentPhase;
+    private long phaseStart;
+
+    public void begin(Unit unit, long total) {
+        this.unit = unit;
+        this.total = total;
+    }
+
+    public void advance(long amount) {
+        processed.addAndGet(amount);
+        lastAdvanceNanos = System.nanoTime();
+    }
+
+    public void stage(Stage stage) {
+        this.stage = stage;
+    }
+
+    public void pageQueued(CompletableFuture<?> upload) {
+        pages.incrementAndGet();
+        upload.thenRun(this::pageUploaded);
+    }
+
+    public void imageQueued(CompletableFuture<?> upload) {
+        images.incrementAndGet();
+        upload.thenRun(this::imageUploaded);
+    }
+
+    private void pageUploaded() {
+        pagesUploaded.incrementAndGet();
+        lastAdvanceNanos = System.nanoTime();
+    }
+
+    private void imageUploaded() {
+        imagesUploaded.incrementAndGet();
+        lastAdvanceNanos = System.nanoTime();
+    }
+
+    /**
+     * 切换到新阶段，之前的时间记到原阶段上
+     *
+     * @return 原阶段，用于嵌套结束时切回
+     */
+    public Phase enter(Phase phase) {
+        long now = System.nanoTime();
+        Phase previous = currentPhase;
+        if (previous != null) {
+            phaseNanos[previous.ordinal()] += now - phaseStart;
+        }
+        currentPhase = phase;
+        phaseStart = now;
+        return previous;
+    }
+
+    public long phaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * 包装上传文件的输入流，读取时间计入 DOWNLOAD，并统计字节数
+     */
+    public InputStream track(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                Phase previous = enter(Phase.DOWNLOAD);
+                try {
+                    int b = super.read();
+                    if (b >= 0) {
+                        bytesDownloaded.incrementAndGet();
+                    }
+                    return b;
+                } finally {
+                    enter(previous);
+                }
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                Phase previous = enter(Phase.DOWNLOAD);
+                try {
+                    int n = super.read(buf, off, len);
+                    if (n > 0) {
+                        bytesDownloaded.addAndGet(n);
+                    }
+                    return n;
+                } finally {
+                    enter(previous);
+                }
+            }
+        };
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public Unit getUnit() {
+        return unit;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getPages() {
+        return pages.get();
+    }
+
+    public long getPagesUploaded() {
+        return pagesUploaded.get();
+    }
+
+    public long getImages() {
+        return images.get();
+    }
+
+    public long getImagesUploaded() {
+        return imagesUploaded.get();
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public long idleNanos() {
+        return System.nanoTime() - lastAdvanceNanos;
+    }
+}
@@ -0,0 +1,144 @@
+package com.jp.epubbot.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时把解析进度编辑到"正在处理"那条消息上。
+ * 每个任务按固定间隔最多编辑一次；内容没变或上一次编辑还没发出时跳过，
+ * 编辑请求走 TelegramOutbox，同样受会话限速约束。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestProgressReporter {
+
+    private final TelegramOutbox outbox;
+
+    @Value("${telegram.progress.interval:3s}")
+    private Duration interval;
+
+    // 超过这个时间没有任何进展时在消息里提示
+    @Value("${telegram.progress.stall-warning:20s}")
+    private Duration stallWarning;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ingest-progress");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 开始汇报，关闭返回值即停止
+     *
+     * @param statusMessage 要编辑的状态消息，发送失败时为 null
+     * @param header        消息第一行
+     */
+    public AutoCloseable start(Long chatId, CompletableFuture<Message> statusMessage, String header,
+                               IngestProgress progress) {
+        Task task = new Task(chatId, statusMessage, header, progress);
+        long periodMs = Math.max(1000, interval.toMillis());
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(task, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+    }
+
+    private class Task implements Runnable {
+        final Long chatId;
+        final CompletableFuture<Message> statusMessage;
+        final String header;
+        final IngestProgress progress;
+        String lastText;
+        CompletableFuture<?> lastEdit = CompletableFuture.completedFuture(null);
+
+        Task(Long chatId, CompletableFuture<Message> statusMessage, String header, IngestProgress progress) {
+            this.chatId = chatId;
+            this.statusMessage = statusMessage;
+            this.header = header;
+            this.progress = progress;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Message message = statusMessage.getNow(null);
+                if (message == null || !lastEdit.isDone()) {
+                    return;
+                }
+                String text = header + "\n\n" + render(progress);
+                if (text.equals(lastText)) {
+                    return;
+                }
+                lastText = text;
+                EditMessageText edit = new EditMessageText();
+                edit.setChatId(chatId);
+                edit.setMessageId(message.getMessageId());
+                edit.setText(text);
+                lastEdit = outbox.send(chatId, edit).exceptionally(e -> {
+                    log.warn("更新解析进度失败: [{}]", e.toString());
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("更新解析进度失败: [{}]", e.toString());
+            }
+        }
+    }
+
+    private String render(IngestProgress p) {
+        StringBuilder sb = new StringBuilder("⏳ ").append(p.getStage().label);
+        long total = p.getTotal();
+        long done = Math.min(p.getProcessed(), total);
+        if (p.getStage() == IngestProgress.Stage.PARSING && total > 0) {
+            sb.append(" ").append(done * 100 / total).append("%");
+            if (done > 0) {
+                long remainingSec = (long) (p.elapsedNanos() / 1e9 * (total - done) / done);
+                sb.append(" · 预计剩余 ").append(formatSeconds(remainingSec));
+            }
+        }
+        sb.append("\n📄 已生成 ").append(p.getPages()).append(" 页，已上传 ").append(p.getPagesUploaded());
+        if (p.getImages() > 0) {
+            sb.append("\n🖼 图片 ").append(p.getImagesUploaded()).append("/").append(p.getImages());
+        }
+        if (total > 0) {
+            sb.append("\n📦 已处理 ").append(formatAmount(p.getUnit(), done))
+                    .append(" / ").append(formatAmount(p.getUnit(), total));
+        }
+        sb.append("\n⏱ 已用时 ").append(formatSeconds(TimeUnit.NANOSECONDS.toSeconds(p.elapsedNanos())));
+        long idleSec = TimeUnit.NANOSECONDS.toSeconds(p.idleNanos());
+        if (idleSec >= stallWarning.toSeconds()) {
+            sb.append("\n⚠️ 已 ").append(formatSeconds(idleSec)).append(" 没有进展");
+        }
+        return sb.toString();
+    }
+
+    private static String formatAmount(IngestProgress.Unit unit, long value) {
+        return switch (unit) {
+            case BYTES -> String.format("%.1f MB", value / 1024.0 / 1024.0);
+            case CHARS -> String.format("%.1f 万字", value / 10000.0);
+            case PAGES -> value + " 页";
+        };
+    }
+
+    private static String formatSeconds(long seconds) {
+        if (seconds < 60) {
+            return seconds + " 秒";
+        }
+        return seconds / 60 + " 分 " + seconds % 60 + " 秒";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
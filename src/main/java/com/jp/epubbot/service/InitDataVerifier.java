@@ -0,0 +1,96 @@
+package com.jp.epubbot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 校验小程序传来的 Telegram WebApp initData：
+ * secret = HMAC_SHA256("WebAppData", botToken)，hash = hex(HMAC_SHA256(secret, 按键排序的 key=value 以换行拼接))。
+ * 用于需要确认调用者身份的接口，不能只信任请求里的 userId。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InitDataVerifier {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${telegram.bot.token}")
+    private String botToken;
+
+    // initData 的有效期，超过后需要重新打开小程序
+    @Value("${telegram.webapp.init-data-ttl:24h}")
+    private Duration ttl;
+
+    private byte[] secret;
+
+    @PostConstruct
+    public void init() throws Exception {
+        secret = hmac("WebAppData".getBytes(StandardCharsets.UTF_8), botToken);
+    }
+
+    /**
+     * @return 校验通过时返回 Telegram 用户 ID，否则返回 null
+     */
+    public Long verify(String initData) {
+        if (StringUtils.isBlank(initData)) {
+            return null;
+        }
+        try {
+            Map<String, String> fields = new TreeMap<>();
+            for (String pair : initData.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    fields.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+            String hash = fields.remove("hash");
+            if (hash == null) {
+                return null;
+            }
+            StringBuilder dataCheck = new StringBuilder();
+            for (Map.Entry<String, String> e : fields.entrySet()) {
+                if (!dataCheck.isEmpty()) {
+                    dataCheck.append('\n');
+                }
+                dataCheck.append(e.getKey()).append('=').append(e.getValue());
+            }
+            byte[] expected = hmac(secret, dataCheck.toString());
+            if (!MessageDigest.isEqual(expected, HexFormat.of().parseHex(hash.toLowerCase()))) {
+                return null;
+            }
+            long authDate = Long.parseLong(fields.getOrDefault("auth_date", "0"));
+            if (System.currentTimeMillis() / 1000 - authDate > ttl.toSeconds()) {
+                return null;
+            }
+            JsonNode user = objectMapper.readTree(fields.getOrDefault("user", "{}"));
+            return user.hasNonNull("id") ? user.get("id").asLong() : null;
+        } catch (Exception e) {
+            log.debug("initData 校验失败: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
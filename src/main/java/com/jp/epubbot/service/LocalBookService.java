@@ -1,57 +1,317 @@
 package com.jp.epubbot.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 public class LocalBookService {
 
     private static final String DATA_DIR = "data/books";
+    private static final String PACK_SUFFIX = ".pack";
+    private static final Pattern PAGE_FILE = Pattern.compile("\\d+\\.html");
 
-    public LocalBookService() {
+    @Value("${app.local.page-cache-size:64MB}")
+    private DataSize pageCacheSize;
+
+    @Value("${app.local.page-cache-ttl:1h}")
+    private Duration pageCacheTtl;
+
+    // key: bookId/pageIndex，按字符串占用的字节数计重
+    private Cache<String, String> pageCache;
+    // key: bookId，目录下的页数，只通过列目录得到，不读文件内容
+    private Cache<String, Integer> pageCountCache;
+    // key: bookId，已映射的书籍包；没有包文件时缓存 empty，转换或删除时失效
+    private Cache<String, Optional<BookPack>> packCache;
+
+    private final MeterRegistry meterRegistry;
+
+    public LocalBookService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
         new File(DATA_DIR).mkdirs();
     }
 
+    @PostConstruct
+    public void init() {
+        pageCache = Caffeine.newBuilder()
+                .maximumWeight(pageCacheSize.toBytes())
+                .weigher((String key, String value) -> 64 + key.length() * 2 + value.length() * 2)
+                .expireAfterAccess(pageCacheTtl)
+                .recordStats()
+                .build();
+        pageCountCache = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(pageCacheTtl)
+                .build();
+        packCache = Caffeine.newBuilder()
+                .maximumSize(1_024)
+                .expireAfterAccess(pageCacheTtl)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pageCache, "local.pages");
+    }
+
     public String getChapter(String bookId, int pageIndex) {
+        String key = bookId + "/" + pageIndex;
+        BookPack pack = getPack(bookId);
+        if (pack != null) {
+            // 映射内存本身由操作系统页缓存承载，只有需要抽取正文的完整页面才进入 pageCache
+            String page = pack.getPage(pageIndex);
+            if (page == null || !isFullPage(page)) {
+                return page;
+            }
+            return pageCache.get(key, k -> toFragment(page));
+        }
+        String cached = pageCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
         try {
             Path file = Paths.get(DATA_DIR, bookId, pageIndex + ".html");
-            if (Files.exists(file)) {
-                return Files.readString(file, StandardCharsets.UTF_8);
-            }
+            String content = toFragment(Files.readString(file, StandardCharsets.UTF_8));
+            pageCache.put(key, content);
+            return content;
+        } catch (NoSuchFileException e) {
+            return null;
         } catch (IOException e) {
             log.error("读取章节失败", e);
         }
         return null;
     }
 
-    public void deleteBookDirectory(String bookId) {
-        if (bookId == null || bookId.trim().isEmpty()) {
-            return;
+    private static boolean isFullPage(String html) {
+        return html.startsWith("<!DOCTYPE");
+    }
+
+    /**
+     * 本地存储后端写入的是完整的静态页面，/read/ 只取其中的正文
+     */
+    private static String toFragment(String html) {
+        if (!isFullPage(html)) {
+            return html;
+        }
+        Element content = Jsoup.parse(html).getElementById("contentArea");
+        return content != null ? content.html() : html;
+    }
+
+    /**
+     * 只判断页面是否存在，不读取内容：命中缓存直接返回，否则按目录页数判断
+     */
+    public boolean hasChapter(String bookId, int pageIndex) {
+        if (pageIndex < 1) {
+            return false;
+        }
+        BookPack pack = getPack(bookId);
+        if (pack != null) {
+            return pack.hasPage(pageIndex);
+        }
+        if (pageCache.getIfPresent(bookId + "/" + pageIndex) != null) {
+            return true;
+        }
+        return pageIndex <= getPageCount(bookId);
+    }
+
+    /**
+     * @return 书籍包或本地目录中的页面数量，都不存在时为 0
+     */
+    public int getPageCount(String bookId) {
+        BookPack pack = getPack(bookId);
+        if (pack != null) {
+            return pack.getPageCount();
+        }
+        return pageCountCache.get(bookId, this::countPages);
+    }
+
+    private BookPack getPack(String bookId) {
+        if (bookId == null || bookId.isEmpty()) {
+            return null;
+        }
+        return packCache.get(bookId, this::openPack).orElse(null);
+    }
+
+    private Optional<BookPack> openPack(String bookId) {
+        Path file = packPath(bookId);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
         }
         try {
-            Path dir = Paths.get(DATA_DIR, bookId);
-            File directory = dir.toFile();
-
-            if (directory.exists() && directory.isDirectory()) {
-                boolean deleted = FileSystemUtils.deleteRecursively(directory);
-                if (deleted) {
-                    log.info("物理文件已删除: {}", dir.toAbsolutePath());
-                } else {
-                    log.warn("物理文件删除失败: {}", dir.toAbsolutePath());
+            return Optional.of(BookPack.open(file));
+        } catch (IOException e) {
+            log.error("打开书籍包失败: {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    private Path packPath(String bookId) {
+        return Paths.get(DATA_DIR, bookId + PACK_SUFFIX);
+    }
+
+    /**
+     * 书籍包中的一页：正文是映射内存的只读切片，lastModified 为包文件的修改时间
+     */
+    public record PackedPage(ByteBuffer content, long lastModified) {
+    }
+
+    /**
+     * @return 书籍包中的页面，没有书籍包或页码越界时返回 null
+     */
+    public PackedPage getPackedPage(String bookId, int pageIndex) {
+        BookPack pack = getPack(bookId);
+        ByteBuffer content = pack != null ? pack.pageBytes(pageIndex) : null;
+        if (content == null) {
+            if (pack != null && pack.hasPage(pageIndex)) {
+                log.warn("书籍包索引损坏: {} 第 {} 页", bookId, pageIndex);
+            }
+            return null;
+        }
+        return new PackedPage(content, pack.getLastModified());
+    }
+
+    /**
+     * @return 书籍包是否存在并已删除
+     */
+    public boolean deletePack(String bookId) throws IOException {
+        evict(bookId);
+        return Files.deleteIfExists(packPath(bookId));
+    }
+
+    /**
+     * 入库时按页顺序写入书籍包，close 后生效
+     */
+    public BookPackWriter openPackWriter(String bookId) throws IOException {
+        evict(bookId);
+        return new BookPackWriter(packPath(bookId)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                evict(bookId);
+            }
+        };
+    }
+
+    /**
+     * 将 data/books/{bookId}/1..N.html 转换为 data/books/{bookId}.pack。
+     * 页码必须从 1 连续，否则放弃转换；图片等其他文件保留在原目录。
+     *
+     * @param deleteSource 转换成功后是否删除原页面文件
+     * @return 写入的页数，未转换时为 0
+     */
+    public int convertToPack(String bookId, boolean deleteSource) throws IOException {
+        Path dir = Paths.get(DATA_DIR, bookId);
+        if (!Files.isDirectory(dir) || Files.exists(packPath(bookId))) {
+            return 0;
+        }
+        List<Path> pages;
+        try (Stream<Path> files = Files.list(dir)) {
+            pages = files.filter(p -> PAGE_FILE.matcher(p.getFileName().toString()).matches()).toList();
+        }
+        int count = pages.size();
+        for (int i = 1; i <= count; i++) {
+            if (!Files.isRegularFile(dir.resolve(i + ".html"))) {
+                log.warn("页面不连续, 跳过转换: {} 缺少第 {} 页", bookId, i);
+                return 0;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        BookPackWriter writer = openPackWriter(bookId);
+        try {
+            for (int i = 1; i <= count; i++) {
+                writer.appendPage(Files.readAllBytes(dir.resolve(i + ".html")));
+            }
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.close();
+
+        if (deleteSource) {
+            for (Path page : pages) {
+                Files.deleteIfExists(page);
+            }
+            try (Stream<Path> rest = Files.list(dir)) {
+                if (rest.findAny().isEmpty()) {
+                    Files.delete(dir);
                 }
             }
-        } catch (Exception e) {
-            log.error("删除书籍目录时发生异常: {}", bookId, e);
         }
+        return count;
+    }
+
+    /**
+     * @return data/books 下尚未打包的书籍目录
+     */
+    public List<String> listUnpackedBooks() throws IOException {
+        try (Stream<Path> dirs = Files.list(Paths.get(DATA_DIR))) {
+            return dirs.filter(Files::isDirectory)
+                    .map(p -> p.getFileName().toString())
+                    .filter(id -> !Files.exists(packPath(id)))
+                    .toList();
+        }
+    }
+
+    private int countPages(String bookId) {
+        Path dir = Paths.get(DATA_DIR, bookId);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return (int) files.filter(p -> p.getFileName().toString().endsWith(".html")).count();
+        } catch (IOException e) {
+            log.warn("统计页面数量失败: {}", bookId, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 删除书籍包和页面目录，删除失败时抛出异常，由删除任务重试
+     */
+    public void deleteBookDirectory(String bookId) throws IOException {
+        if (bookId == null || bookId.trim().isEmpty()) {
+            return;
+        }
+        evict(bookId);
+        if (Files.deleteIfExists(packPath(bookId))) {
+            log.info("书籍包已删除: {}", packPath(bookId).toAbsolutePath());
+        }
+        Path dir = Paths.get(DATA_DIR, bookId);
+        if (FileSystemUtils.deleteRecursively(dir)) {
+            log.info("物理文件已删除: {}", dir.toAbsolutePath());
+        }
+        if (Files.exists(dir)) {
+            throw new IOException("物理文件删除失败: " + dir.toAbsolutePath());
+        }
+    }
+
+    public void evict(String bookId) {
+        String prefix = bookId + "/";
+        pageCache.asMap().keySet().removeIf(k -> k.startsWith(prefix));
+        pageCountCache.invalidate(bookId);
+        packCache.invalidate(bookId);
     }
-}
\ No newline at end of file
+}
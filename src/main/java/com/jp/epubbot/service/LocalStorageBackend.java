@@ -0,0 +1,202 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.StorageKind;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 本地磁盘存储：key 直接对应 data/ 下的相对路径。入库时页面顺序写入 data/books/{bookId}.pack，
+ * 图片等其他文件落在 data/books/{bookId}/；静态文件由 /books/** 提供，阅读页走 /read/{bookId}/{page}。
+ * 入库过程不访问网络。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "local")
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final Path ROOT = Paths.get("data").toAbsolutePath().normalize();
+    private static final Pattern PAGE_KEY = Pattern.compile("^/*books/([^/]+)/(\\d+)\\.html$");
+
+    private final LocalBookService localBookService;
+
+    // 生成链接时使用的站点地址，例如 https://book.example.com；为空时生成站内相对地址
+    @Value("${app.storage.local.public-base-url:}")
+    private String publicBaseUrl;
+
+    @Override
+    public StorageKind kind() {
+        return StorageKind.LOCAL;
+    }
+
+    @Override
+    public String put(String key, byte[] content, String contentType, String cacheControl) {
+        Path file = resolve(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, content);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("本地写入失败: {}", key, e);
+            throw new UncheckedIOException("写入失败: " + key, e);
+        }
+        return publicUrl(key);
+    }
+
+    @Override
+    public PageWriter openPages(String bookId) {
+        BookPackWriter writer;
+        try {
+            writer = localBookService.openPackWriter(bookId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建书籍包失败: " + bookId, e);
+        }
+        return new PageWriter() {
+            private boolean committed;
+
+            @Override
+            public CompletableFuture<String> putPage(int pageIndex, byte[] html) {
+                if (pageIndex != writer.getPageCount() + 1) {
+                    return CompletableFuture.failedFuture(new IllegalStateException(
+                            "书籍包页码不连续: " + bookId + " 期望第 " + (writer.getPageCount() + 1) + " 页, 实际 " + pageIndex));
+                }
+                try {
+                    writer.appendPage(html);
+                    return CompletableFuture.completedFuture(pageUrl(bookId, pageIndex));
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(new UncheckedIOException("写入书籍包失败: " + bookId, e));
+                }
+            }
+
+            @Override
+            public void commit() throws IOException {
+                if (writer.getPageCount() == 0) {
+                    // 没有页面的书不会登记，也不留空包
+                    return;
+                }
+                writer.close();
+                committed = true;
+            }
+
+            @Override
+            public void close() {
+                if (!committed) {
+                    writer.abort();
+                }
+            }
+        };
+    }
+
+    @Override
+    public byte[] get(String key) {
+        try {
+            return Files.readAllBytes(resolve(key));
+        } catch (NoSuchFileException e) {
+            // 页面已写入书籍包
+            Matcher m = PAGE_KEY.matcher(key);
+            if (m.matches()) {
+                LocalBookService.PackedPage page = localBookService.getPackedPage(m.group(1), Integer.parseInt(m.group(2)));
+                if (page != null) {
+                    byte[] bytes = new byte[page.content().remaining()];
+                    page.content().get(bytes);
+                    return bytes;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取失败: " + key, e);
+        }
+    }
+
+    @Override
+    public long deletePrefix(String prefix) {
+        Path dir = resolve(prefix);
+        if (dir.equals(ROOT)) {
+            return 0;
+        }
+        long count = 0;
+        try {
+            if (Files.exists(dir)) {
+                try (Stream<Path> paths = Files.walk(dir)) {
+                    for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                        if (Files.isRegularFile(p)) {
+                            count++;
+                        }
+                        Files.deleteIfExists(p);
+                    }
+                }
+            }
+            Optional<String> bookId = bookIdOf(prefix);
+            if (bookId.isPresent() && localBookService.deletePack(bookId.get())) {
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("删除失败: " + prefix, e);
+        }
+        bookIdOf(prefix).ifPresent(localBookService::evict);
+        return count;
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        Path dir = resolve(prefix);
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(p -> ROOT.relativize(p).toString().replace('\\', '/'))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("列目录失败: " + prefix, e);
+        }
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        return base() + "/" + key;
+    }
+
+    @Override
+    public String pageUrl(String bookId, int pageIndex) {
+        return base() + "/read/" + bookId + "/" + pageIndex;
+    }
+
+    private String base() {
+        return publicBaseUrl.endsWith("/") ? publicBaseUrl.substring(0, publicBaseUrl.length() - 1) : publicBaseUrl;
+    }
+
+    private Path resolve(String key) {
+        String clean = key.startsWith("/") ? key.substring(1) : key;
+        Path path = ROOT.resolve(clean).normalize();
+        if (!path.startsWith(ROOT)) {
+            throw new IllegalArgumentException("非法路径: " + key);
+        }
+        return path;
+    }
+
+    private static Optional<String> bookIdOf(String prefix) {
+        String[] parts = prefix.replaceAll("^/+", "").split("/");
+        return parts.length >= 2 && parts[0].equals("books") ? Optional.of(parts[1]) : Optional.empty();
+    }
+}
@@ -0,0 +1,135 @@
+package com.jp.epubbot.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * 无状态书签 Token：bm_ + base64url(bookId 16 字节 + 页码 varint + HMAC 前 6 字节)。
+ * 解析时只做签名校验，不查 bookmark_tokens 表；旧的 bm_xxxxxxxx 随机 Token 仍走数据库。
+ */
+@Slf4j
+@Component
+public class PageTokenCodec {
+
+    public static final String PREFIX = "bm_";
+
+    private static final int BOOK_ID_BYTES = 16;
+    private static final int MAC_BYTES = 6;
+    private static final int LEGACY_TOKEN_LENGTH = PREFIX.length() + 8;
+
+    @Value("${app.token-secret:}")
+    private String tokenSecret;
+
+    @Value("${telegram.bot.token}")
+    private String botToken;
+
+    private byte[] key;
+
+    private final ThreadLocal<Mac> macHolder = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac;
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 不可用", e);
+        }
+    });
+
+    public record PageRef(String bookId, int pageIndex) {
+    }
+
+    @PostConstruct
+    public void init() throws Exception {
+        // 未单独配置时由 bot token 派生，保证同一部署重启后 Token 依然有效
+        String secret = StringUtils.isNotEmpty(tokenSecret) ? tokenSecret : "page-token:" + botToken;
+        key = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return 签名 Token；bookId 不是 32 位十六进制（非本系统生成的旧数据）时返回 null
+     */
+    public String encode(String bookId, int pageIndex) {
+        if (bookId == null || bookId.length() != BOOK_ID_BYTES * 2 || pageIndex < 0) {
+            return null;
+        }
+        byte[] id;
+        try {
+            id = HexFormat.of().parseHex(bookId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BOOK_ID_BYTES + 5 + MAC_BYTES);
+        out.writeBytes(id);
+        int v = pageIndex;
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+        byte[] payload = out.toByteArray();
+        out.writeBytes(sign(payload));
+
+        return PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * @return 解析结果；旧格式 Token、格式错误或签名不匹配时返回 null
+     */
+    public PageRef decode(String token) {
+        if (token == null || !token.startsWith(PREFIX) || token.length() <= LEGACY_TOKEN_LENGTH) {
+            return null;
+        }
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(token.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (raw.length < BOOK_ID_BYTES + 1 + MAC_BYTES) {
+            return null;
+        }
+
+        byte[] payload = Arrays.copyOfRange(raw, 0, raw.length - MAC_BYTES);
+        byte[] mac = Arrays.copyOfRange(raw, raw.length - MAC_BYTES, raw.length);
+        if (!MessageDigest.isEqual(mac, sign(payload))) {
+            log.warn("书签 Token 签名校验失败: {}", token);
+            return null;
+        }
+
+        int pageIndex = 0;
+        int shift = 0;
+        for (int i = BOOK_ID_BYTES; i < payload.length; i++, shift += 7) {
+            if (shift > 28) {
+                return null;
+            }
+            int b = payload[i] & 0xFF;
+            pageIndex |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (i != payload.length - 1) {
+                    return null;
+                }
+                String bookId = HexFormat.of().formatHex(payload, 0, BOOK_ID_BYTES);
+                return new PageRef(bookId, pageIndex);
+            }
+        }
+        return null;
+    }
+
+    private byte[] sign(byte[] payload) {
+        Mac mac = macHolder.get();
+        return Arrays.copyOf(mac.doFinal(payload), MAC_BYTES);
+    }
+}
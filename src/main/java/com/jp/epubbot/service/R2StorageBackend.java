@@ -0,0 +1,53 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.StorageKind;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "r2", matchIfMissing = true)
+public class R2StorageBackend implements StorageBackend {
+
+    private final R2StorageService r2StorageService;
+
+    @Override
+    public StorageKind kind() {
+        return StorageKind.R2;
+    }
+
+    @Override
+    public String put(String key, byte[] content, String contentType, String cacheControl) {
+        return r2StorageService.uploadFile(key, content, contentType, cacheControl);
+    }
+
+    @Override
+    public CompletableFuture<String> putAsync(String key, byte[] content, String contentType) {
+        return r2StorageService.uploadFileAsync(key, content, contentType);
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return r2StorageService.download(key);
+    }
+
+    @Override
+    public long deletePrefix(String prefix) {
+        return r2StorageService.deleteFolder(prefix, Runnable::run, 3, n -> {
+        });
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        return r2StorageService.listKeys(prefix);
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        return r2StorageService.publicUrl(key);
+    }
+}
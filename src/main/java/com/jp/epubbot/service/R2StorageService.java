@@ -1,13 +1,22 @@
 package com.jp.epubbot.service;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.SdkClientException;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -15,16 +24,34 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class R2StorageService {
 
     @Value("${cloud.r2.access-key}")
@@ -42,33 +69,245 @@ public class R2StorageService {
     @Value("${cloud.r2.public-domain}")
     private String publicDomain;
 
+    // 为空时使用 https://{account-id}.r2.cloudflarestorage.com，可指向本地的 S3 兼容服务
+    @Value("${cloud.r2.endpoint:}")
+    private String endpoint;
+
+    @Value("${cloud.r2.path-style-access:false}")
+    private boolean pathStyleAccess;
+
+    @Value("${cloud.r2.limiter.initial:8}")
+    private int limiterInitial;
+
+    @Value("${cloud.r2.limiter.min:1}")
+    private int limiterMin;
+
+    @Value("${cloud.r2.limiter.max:64}")
+    private int limiterMax;
+
+    @Value("${cloud.r2.limiter.backoff-ratio:0.5}")
+    private double limiterBackoffRatio;
+
+    // 延迟不超过基线的这个倍数时才继续放大并发
+    @Value("${cloud.r2.limiter.latency-tolerance:2.0}")
+    private double limiterLatencyTolerance;
+
+    // 连接池大小，0 表示与并发上限一致
+    @Value("${cloud.r2.client.max-connections:0}")
+    private int maxConnections;
+
+    @Value("${cloud.r2.client.connection-timeout:10s}")
+    private Duration connectionTimeout;
+
+    @Value("${cloud.r2.client.socket-timeout:60s}")
+    private Duration socketTimeout;
+
+    // 连接最长存活时间，到期后不再复用，避免一直连到同一个后端节点
+    @Value("${cloud.r2.client.connection-ttl:5m}")
+    private Duration connectionTtl;
+
+    @Value("${cloud.r2.client.connection-max-idle:60s}")
+    private Duration connectionMaxIdle;
+
+    @Value("${cloud.r2.client.tcp-keep-alive:true}")
+    private boolean tcpKeepAlive;
+
+    // 429 / 5xx / 超时的重试次数。SDK 自身不重试，由 limited() 在限流器之外重试，每次失败都会让限流器退让
+    @Value("${cloud.r2.client.max-error-retry:3}")
+    private int maxErrorRetry;
+
+    // 达到该大小的对象走分片上传
+    @Value("${cloud.r2.multipart.threshold:16MB}")
+    private DataSize multipartThreshold;
+
+    // R2 要求除最后一片外每片至少 5MB
+    @Value("${cloud.r2.multipart.part-size:8MB}")
+    private DataSize multipartPartSize;
+
+    @Value("${cloud.r2.multipart.part-threads:8}")
+    private int multipartPartThreads;
+
+    // 已提交但未上传完成的字节数上限，达到后 uploadFileAsync 阻塞调用方，避免整本书的页面堆在内存里
+    @Value("${cloud.r2.upload.max-pending-bytes:64MB}")
+    private DataSize maxPendingUploadBytes;
+
     private AmazonS3 s3Client;
+    private AdaptiveLimiter limiter;
+    // 异步上传的线程数与并发上限一致，实际并发由 limiter 控制
+    private ExecutorService uploadPool;
+    private ExecutorService partPool;
+    // 已提交但尚未完成的异步上传数
+    private final AtomicInteger pendingUploads = new AtomicInteger();
+    // 按字节计的上传名额，许可数为 KB
+    private Semaphore pendingUploadPermits;
+    private int maxPendingUploadPermits;
+
+    private final MeterRegistry meterRegistry;
+    private Timer limiterWait;
+    private Counter uploadedBytes;
+    // 按 op|outcome 缓存，请求路径上不再每次构建并查找 Timer
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void init() {
-        String endpoint = String.format("https://%s.r2.cloudflarestorage.com", accountId);
+        String url = StringUtils.hasText(endpoint) ? endpoint : String.format("https://%s.r2.cloudflarestorage.com", accountId);
         BasicAWSCredentials credentials = new BasicAWSCredentials(accessKey, secretKey);
+        limiter = new AdaptiveLimiter(limiterInitial, limiterMin, limiterMax, limiterBackoffRatio, limiterLatencyTolerance, 1024);
+
+        ClientConfiguration clientConfig = new ClientConfiguration()
+                .withMaxConnections(maxConnections > 0 ? maxConnections : Math.max(limiterMax, 8))
+                .withConnectionTimeout((int) connectionTimeout.toMillis())
+                .withSocketTimeout((int) socketTimeout.toMillis())
+                .withConnectionTTL(connectionTtl.toMillis())
+                .withConnectionMaxIdleMillis(connectionMaxIdle.toMillis())
+                .withTcpKeepAlive(tcpKeepAlive)
+                .withMaxErrorRetry(0);
 
         s3Client = AmazonS3ClientBuilder.standard()
-                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, "auto"))
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(url, "auto"))
                 .withCredentials(new AWSStaticCredentialsProvider(credentials))
+                .withPathStyleAccessEnabled(pathStyleAccess)
+                .withClientConfiguration(clientConfig)
                 .build();
+
+        uploadPool = Executors.newFixedThreadPool(Math.max(limiterMax, 1), daemonThreads("r2-upload-"));
+        partPool = Executors.newFixedThreadPool(Math.max(multipartPartThreads, 1), daemonThreads("r2-part-"));
+        maxPendingUploadPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxPendingUploadBytes.toKilobytes()));
+        pendingUploadPermits = new Semaphore(maxPendingUploadPermits);
+
+        limiterWait = Timer.builder("epubbot.r2.limiter.wait")
+                .description("等待 R2 并发名额的时间")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        uploadedBytes = Counter.builder("epubbot.r2.upload.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadPool.shutdown();
+        partPool.shutdown();
+        s3Client.shutdown();
+    }
+
+    /**
+     * 所有 R2 请求都经过自适应并发限制，按结果调整上限；429 / 5xx / 网络错误按退避重试，
+     * 每次重试重新占用名额。op 会被多次执行，请求体的流要在 op 内创建
+     */
+    private <T> T limited(String name, Supplier<T> op) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return limitedOnce(name, op);
+            } catch (RuntimeException e) {
+                if (attempt > maxErrorRetry || !retryable(e)) {
+                    throw e;
+                }
+                long delay = ThreadLocalRandom.current().nextLong(100L << Math.min(attempt - 1, 6), 200L << Math.min(attempt - 1, 6));
+                log.debug("R2 请求 {} 失败, 第 {} 次, {} 毫秒后重试: {}", name, attempt, delay, e.toString());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private <T> T limitedOnce(String name, Supplier<T> op) {
+        long waitStart = System.nanoTime();
+        long start;
+        try {
+            start = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待 R2 并发名额时被中断", e);
+        }
+        limiterWait.record(start - waitStart, TimeUnit.NANOSECONDS);
+        AdaptiveLimiter.Outcome outcome = AdaptiveLimiter.Outcome.IGNORED;
+        try {
+            T result = op.get();
+            outcome = AdaptiveLimiter.Outcome.SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            outcome = classify(e);
+            throw e;
+        } finally {
+            limiter.release(start, outcome);
+            requestTimer(name, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer requestTimer(String name, AdaptiveLimiter.Outcome outcome) {
+        return requestTimers.computeIfAbsent(name + "|" + outcome, k -> Timer.builder("epubbot.r2.requests")
+                .description("R2 请求耗时")
+                .tag("op", name)
+                .tag("outcome", outcome.name().toLowerCase())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private static boolean retryable(RuntimeException e) {
+        if (e instanceof AmazonServiceException) {
+            return classify(e) == AdaptiveLimiter.Outcome.DROPPED;
+        }
+        return e instanceof SdkClientException && e.getCause() instanceof IOException;
+    }
+
+    private static AdaptiveLimiter.Outcome classify(RuntimeException e) {
+        if (e instanceof AmazonServiceException ase) {
+            int status = ase.getStatusCode();
+            return status == 429 || status >= 500 ? AdaptiveLimiter.Outcome.DROPPED : AdaptiveLimiter.Outcome.IGNORED;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException || t instanceof ConnectTimeoutException) {
+                return AdaptiveLimiter.Outcome.DROPPED;
+            }
+        }
+        return AdaptiveLimiter.Outcome.IGNORED;
+    }
+
+    /**
+     * @return 当前并发上限、在途请求数和延迟分位数
+     */
+    public Map<String, Object> limiterStats() {
+        return limiter.stats();
     }
 
     public String uploadFile(String path, byte[] content, String contentType) {
+        return uploadFile(path, content, contentType, null);
+    }
+
+    /**
+     * @param cacheControl 为空时沿用桶 / CDN 的默认缓存策略
+     */
+    public String uploadFile(String path, byte[] content, String contentType, String cacheControl) {
         try {
-            InputStream is = new ByteArrayInputStream(content);
             ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentLength(content.length);
             metadata.setContentType(contentType);
+            if (cacheControl != null) {
+                metadata.setCacheControl(cacheControl);
+            }
             String key = path.startsWith("/") ? path.substring(1) : path;
 
-            s3Client.putObject(new PutObjectRequest(bucketName, key, is, metadata));
-            String baseUrl = publicDomain.endsWith("/")
-                    ? publicDomain.substring(0, publicDomain.length() - 1)
-                    : publicDomain;
-
-            return baseUrl + "/" + key;
+            if (content.length >= multipartThreshold.toBytes()) {
+                uploadMultipart(key, content, metadata);
+            } else {
+                metadata.setContentLength(content.length);
+                limited("put", () -> s3Client.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(content), metadata)));
+            }
+            uploadedBytes.increment(content.length);
+            return publicUrl(key);
 
         } catch (Exception e) {
             log.error("R2 Upload Failed: {}", path, e);
@@ -76,13 +315,151 @@ public class R2StorageService {
         }
     }
 
+    /**
+     * 在上传线程池中执行 uploadFile。未完成的上传超过 max-pending-bytes 时阻塞调用方，直到有上传完成；
+     * 单个超过上限的文件独占全部名额
+     */
+    public CompletableFuture<String> uploadFileAsync(String path, byte[] content, String contentType) {
+        int permits = (int) Math.min(maxPendingUploadPermits, Math.max(1L, (content.length + 1023L) / 1024));
+        try {
+            pendingUploadPermits.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        pendingUploads.incrementAndGet();
+        try {
+            return CompletableFuture.supplyAsync(() -> uploadFile(path, content, contentType), uploadPool)
+                    .whenComplete((url, e) -> {
+                        pendingUploads.decrementAndGet();
+                        pendingUploadPermits.release(permits);
+                    });
+        } catch (RuntimeException e) {
+            pendingUploads.decrementAndGet();
+            pendingUploadPermits.release(permits);
+            throw e;
+        }
+    }
+
+    public int pendingUploads() {
+        return pendingUploads.get();
+    }
+
+    public int concurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    public int inFlightRequests() {
+        return limiter.getInFlight();
+    }
+
+    /**
+     * 分片并行上传，每一片单独占用一个并发名额；任意一片失败则放弃整个上传
+     */
+    private void uploadMultipart(String key, byte[] content, ObjectMetadata metadata) {
+        String uploadId = limited("multipart_initiate", () -> s3Client.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, key, metadata)).getUploadId());
+        int partSize = (int) Math.max(5L * 1024 * 1024, multipartPartSize.toBytes());
+        int partCount = (content.length + partSize - 1) / partSize;
+        log.info("分片上传: {} ({} 字节, {} 片)", key, content.length, partCount);
+        try {
+            List<CompletableFuture<PartETag>> parts = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                int offset = i * partSize;
+                int length = Math.min(partSize, content.length - offset);
+                parts.add(CompletableFuture.supplyAsync(() -> limited("multipart_part", () -> s3Client.uploadPart(new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(content, offset, length))
+                        .withPartSize(length)
+                        .withLastPart(partNumber == partCount)).getPartETag()), partPool));
+            }
+            List<PartETag> etags = parts.stream().map(CompletableFuture::join).toList();
+            limited("multipart_complete", () -> s3Client.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucketName, key, uploadId, etags)));
+        } catch (RuntimeException e) {
+            try {
+                limited("multipart_abort", () -> {
+                    s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+                    return null;
+                });
+            } catch (RuntimeException abortError) {
+                log.warn("放弃分片上传失败: {} {}", key, uploadId, abortError);
+            }
+            throw e;
+        }
+    }
+
+    public String publicUrl(String key) {
+        String baseUrl = publicDomain.endsWith("/")
+                ? publicDomain.substring(0, publicDomain.length() - 1)
+                : publicDomain;
+        return baseUrl + "/" + key;
+    }
+
+    /**
+     * @return 文件内容，不存在时返回 null
+     */
+    public byte[] download(String key) {
+        try {
+            return limited("get", () -> {
+                try (S3Object s3Object = s3Client.getObject(bucketName, key);
+                     InputStream is = s3Object.getObjectContent()) {
+                    return StreamUtils.copyToByteArray(is);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException("读取 R2 文件失败: " + key, e.getCause());
+        }
+    }
+
+    public List<String> listKeys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(prefix);
+        ListObjectsV2Result listing;
+        do {
+            listing = limited("list", () -> s3Client.listObjectsV2(request));
+            listing.getObjectSummaries().forEach(o -> keys.add(o.getKey()));
+            request.setContinuationToken(listing.getNextContinuationToken());
+        } while (listing.isTruncated());
+        return keys;
+    }
+
     /**
      * @param prefix 文件夹路径，例如 "books/abc12345/"
      */
     public void deleteFolder(String prefix) {
+        try {
+            deleteFolder(prefix, Runnable::run, 1, n -> {
+            });
+        } catch (Exception e) {
+            log.error("删除 R2 目录失败: {}", prefix, e);
+        }
+    }
+
+    /**
+     * 分页列出前缀下的文件，每页交给 executor 并行批量删除，单批失败按退避重试。
+     *
+     * @param progress 每删除一批回调一次本批数量
+     * @return 删除的文件数
+     * @throws RuntimeException 有批次重试后仍失败
+     */
+    public long deleteFolder(String prefix, Executor executor, int maxAttempts, LongConsumer progress) {
         if (prefix == null || prefix.trim().isEmpty() || prefix.trim().equals("/")) {
             log.warn("拒绝删除空前缀或根目录，操作已取消");
-            return;
+            return 0;
         }
 
         String cleanPrefix = prefix.startsWith("/") ? prefix.substring(1) : prefix;
@@ -93,43 +470,60 @@ public class R2StorageService {
 
         log.info("开始删除 R2 前缀目录: {}", cleanPrefix);
 
-        try {
-            ObjectListing objectListing = null;
-
-            do {
-                ListObjectsRequest listRequest = new ListObjectsRequest()
-                        .withBucketName(bucketName)
-                        .withPrefix(cleanPrefix);
-
-                if (objectListing != null) {
-                    listRequest.setMarker(objectListing.getNextMarker());
-                }
-
-                objectListing = s3Client.listObjects(listRequest);
-                List<S3ObjectSummary> summaries = objectListing.getObjectSummaries();
-
-                if (summaries.isEmpty()) {
-                    break;
-                }
+        List<CompletableFuture<Integer>> batches = new ArrayList<>();
+        ListObjectsV2Request listRequest = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(cleanPrefix)
+                .withMaxKeys(1000);
+        ListObjectsV2Result listing;
+        do {
+            listing = limited("list", () -> s3Client.listObjectsV2(listRequest));
+            List<String> keys = listing.getObjectSummaries().stream().map(S3ObjectSummary::getKey).toList();
+            if (!keys.isEmpty()) {
+                batches.add(CompletableFuture.supplyAsync(() -> {
+                    int n = deleteBatch(keys, maxAttempts);
+                    progress.accept(n);
+                    return n;
+                }, executor));
+            }
+            listRequest.setContinuationToken(listing.getNextContinuationToken());
+        } while (listing.isTruncated());
 
-                List<DeleteObjectsRequest.KeyVersion> keys = new ArrayList<>();
-                for (S3ObjectSummary summary : summaries) {
-                    keys.add(new DeleteObjectsRequest.KeyVersion(summary.getKey()));
-                }
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).join();
+        long total = batches.stream().mapToLong(CompletableFuture::join).sum();
+        log.info("R2 目录删除完成: {}, 共 {} 个文件", cleanPrefix, total);
+        return total;
+    }
 
+    private int deleteBatch(List<String> keys, int maxAttempts) {
+        List<String> remaining = keys;
+        int deleted = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
                 DeleteObjectsRequest deleteRequest = new DeleteObjectsRequest(bucketName)
-                        .withKeys(keys)
+                        .withKeys(remaining.toArray(new String[0]))
                         .withQuiet(true);
-
-                DeleteObjectsResult result = s3Client.deleteObjects(deleteRequest);
-                log.info("已删除批次: {} 个文件 (前缀: {})", result.getDeletedObjects().size(), cleanPrefix);
-
-            } while (objectListing.isTruncated());
-
-            log.info("R2 目录删除完成: {}", cleanPrefix);
-
-        } catch (Exception e) {
-            log.error("删除 R2 目录失败: {}", cleanPrefix, e);
+                limited("delete", () -> s3Client.deleteObjects(deleteRequest));
+                return deleted + remaining.size();
+            } catch (MultiObjectDeleteException e) {
+                // 部分成功：只重试失败的那些。quiet 模式下响应不列出已删除的文件，按请求数减去失败数计算
+                deleted += remaining.size() - e.getErrors().size();
+                remaining = e.getErrors().stream().map(MultiObjectDeleteException.DeleteError::getKey).toList();
+                if (attempt >= maxAttempts) {
+                    throw new IllegalStateException("R2 批量删除失败 " + remaining.size() + " 个文件", e);
+                }
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+            }
+            log.warn("R2 批量删除失败, 第 {} 次, 剩余 {} 个文件", attempt, remaining.size());
+            try {
+                Thread.sleep(Math.min(10_000L, 500L << Math.min(attempt - 1, 5)));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("删除被中断", ie);
+            }
         }
     }
 
@@ -143,29 +537,23 @@ public class R2StorageService {
         if (fileKey == null || StringUtils.isEmpty(newTitle)) {
             return;
         }
-        try {
-            S3Object s3Object = s3Client.getObject(bucketName, fileKey);
-            String htmlContent;
-            try (InputStream is = s3Object.getObjectContent()) {
-                htmlContent = StreamUtils.copyToString(is, StandardCharsets.UTF_8);
-            }
-            Document doc = Jsoup.parse(htmlContent);
-            doc.title(newTitle);
-            Element articleTitleElement = doc.getElementById("articleTitle");
-            if (articleTitleElement != null) {
-                articleTitleElement.text(newTitle);
-            }
-            String newHtml = doc.html();
-            byte[] contentBytes = newHtml.getBytes(StandardCharsets.UTF_8);
-            ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentType("text/html; charset=utf-8"); // 必须设置，否则浏览器会当成下载文件
-            // no-cache: 告诉 CDN 每次都要去 R2 验证文件有没有变 (ETag)，变了才下载，没变就用缓存。max-age=0: 缓存立即过期
-//            metadata.setHeader("Cache-Control", "no-cache, max-age=0");
-            metadata.setContentLength(contentBytes.length);
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(contentBytes);
-            s3Client.putObject(new PutObjectRequest(bucketName, fileKey, inputStream, metadata));
-        } catch (IOException e) {
-            throw new RuntimeException("修改 R2 文件失败: " + fileKey, e);
+        byte[] original = download(fileKey);
+        if (original == null) {
+            return;
+        }
+        Document doc = Jsoup.parse(new String(original, StandardCharsets.UTF_8));
+        doc.title(newTitle);
+        Element articleTitleElement = doc.getElementById("articleTitle");
+        if (articleTitleElement != null) {
+            articleTitleElement.text(newTitle);
         }
+        String newHtml = doc.html();
+        byte[] contentBytes = newHtml.getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("text/html; charset=utf-8"); // 必须设置，否则浏览器会当成下载文件
+        // no-cache: 告诉 CDN 每次都要去 R2 验证文件有没有变 (ETag)，变了才下载，没变就用缓存。max-age=0: 缓存立即过期
+//        metadata.setHeader("Cache-Control", "no-cache, max-age=0");
+        metadata.setContentLength(contentBytes.length);
+        limited("put", () -> s3Client.putObject(new PutObjectRequest(bucketName, fileKey, new ByteArrayInputStream(contentBytes), metadata)));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package com.jp.epubbot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按用户 / IP 限流，每个 (策略, key) 一个令牌桶。
+ * 桶放在 Caffeine 里（分段并发、无全局锁），闲置超过 idleTimeout 自动淘汰；
+ * idleTimeout 不短于 burst / rate 时，被淘汰的桶本来也已经补满，淘汰不影响限流结果。
+ */
+@Component
+@ConfigurationProperties(prefix = "app.rate-limit")
+@Data
+public class RateLimiter {
+
+    public enum Policy {
+        // Bot 命令和按钮回调，按 Telegram 用户
+        BOT,
+        // 小程序接口，按用户和 IP 各算一次
+        API,
+        // 带搜索词的书籍列表，在 API 之外再单独限一次
+        SEARCH,
+        // 被限流时给用户的提示，避免提示本身刷屏
+        NOTICE
+    }
+
+    private boolean enabled = true;
+
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    private long maxKeys = 100_000;
+
+    private Limit bot = new Limit(1, 5);
+
+    private Limit api = new Limit(10, 30);
+
+    private Limit search = new Limit(1, 5);
+
+    @Data
+    public static class Limit {
+        private double rate;
+        private int burst;
+
+        public Limit() {
+        }
+
+        public Limit(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+    }
+
+    private record Key(Policy policy, String key) {
+    }
+
+    private Cache<Key, TokenBucket> buckets;
+    private final Map<Policy, LongAdder> allowed = new EnumMap<>(Policy.class);
+    private final Map<Policy, LongAdder> rejected = new EnumMap<>(Policy.class);
+
+    @PostConstruct
+    public void init() {
+        buckets = Caffeine.newBuilder()
+                .expireAfterAccess(idleTimeout)
+                .maximumSize(maxKeys)
+                .build();
+        for (Policy policy : Policy.values()) {
+            allowed.put(policy, new LongAdder());
+            rejected.put(policy, new LongAdder());
+        }
+    }
+
+    /**
+     * @return false 表示已超出限制
+     */
+    public boolean tryAcquire(Policy policy, String key) {
+        if (!enabled) {
+            return true;
+        }
+        TokenBucket bucket = buckets.get(new Key(policy, key), k -> newBucket(k.policy()));
+        if (bucket.tryAcquire()) {
+            allowed.get(policy).increment();
+            return true;
+        }
+        rejected.get(policy).increment();
+        return false;
+    }
+
+    private TokenBucket newBucket(Policy policy) {
+        Limit limit = switch (policy) {
+            case BOT -> bot;
+            case API -> api;
+            case SEARCH -> search;
+            // 每个用户 30 秒最多提示一次
+            case NOTICE -> new Limit(1.0 / 30, 1);
+        };
+        return new TokenBucket(limit.getRate(), Math.max(1, limit.getBurst()));
+    }
+
+    public long rejectedCount(Policy policy) {
+        return rejected.get(policy).sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trackedKeys", buckets.estimatedSize());
+        for (Policy policy : Policy.values()) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            counts.put("allowed", allowed.get(policy).sum());
+            counts.put("rejected", rejected.get(policy).sum());
+            stats.put(policy.name().toLowerCase(), counts);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,173 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.ReadingPosition;
+import com.jp.epubbot.repository.ReadingPositionRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 阅读进度同步。阅读页滚动时频繁上报，只更新内存（按时间戳后写者胜），
+ * 定时把有变化的记录批量写入 reading_positions；"继续阅读" 直接读内存。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReadingProgressService {
+
+    // 客户端时间戳最多允许超前服务器这么多，避免错误的时钟永久压住后续进度
+    private static final long MAX_CLOCK_SKEW_MS = 60_000;
+
+    private final ReadingPositionRepository positionRepo;
+    private final SqliteWriter sqliteWriter;
+
+    @Value("${app.progress.idle-ttl:6h}")
+    private Duration idleTtl;
+
+    // 每个用户最多保留的书数，超出时淘汰最久没读的一本（内存和数据库）
+    @Value("${app.progress.max-books-per-user:100}")
+    private int maxBooksPerUser;
+
+    private final Map<Long, UserProgress> users = new ConcurrentHashMap<>();
+
+    public record Progress(Long userId, String bookName, String chapterTitle, String url,
+                           String position, Double progress, long timestamp) {
+    }
+
+    private static class UserProgress {
+        final Map<String, Progress> books = new ConcurrentHashMap<>();
+        final Map<String, Boolean> dirty = new ConcurrentHashMap<>();
+        volatile long lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * @return 是否被采纳；比已有记录旧的上报会被忽略
+     */
+    public boolean update(Progress p) {
+        long now = System.currentTimeMillis();
+        long ts = p.timestamp() > 0 ? Math.min(p.timestamp(), now + MAX_CLOCK_SKEW_MS) : now;
+        Progress incoming = new Progress(p.userId(), p.bookName(), p.chapterTitle(), p.url(), p.position(), p.progress(), ts);
+
+        UserProgress user = load(p.userId());
+        if (!user.books.containsKey(p.bookName())) {
+            evictOldest(user, p.userId());
+        }
+        Progress merged = user.books.merge(p.bookName(), incoming,
+                (old, cur) -> cur.timestamp() >= old.timestamp() ? cur : old);
+        boolean accepted = merged == incoming;
+        if (accepted) {
+            user.dirty.put(p.bookName(), Boolean.TRUE);
+        }
+        return accepted;
+    }
+
+    private void evictOldest(UserProgress user, Long userId) {
+        while (user.books.size() >= Math.max(1, maxBooksPerUser)) {
+            Progress oldest = user.books.values().stream()
+                    .min(Comparator.comparingLong(Progress::timestamp))
+                    .orElse(null);
+            if (oldest == null || !user.books.remove(oldest.bookName(), oldest)) {
+                return;
+            }
+            user.dirty.remove(oldest.bookName());
+            sqliteWriter.submit(() -> positionRepo.deleteByUserIdAndBookName(userId, oldest.bookName()));
+        }
+    }
+
+    /**
+     * @return 最近阅读的书，按时间倒序
+     */
+    public List<Progress> getRecent(Long userId, int limit) {
+        return load(userId).books.values().stream()
+                .sorted(Comparator.comparingLong(Progress::timestamp).reversed())
+                .limit(Math.max(1, limit))
+                .toList();
+    }
+
+    public Progress get(Long userId, String bookName) {
+        return load(userId).books.get(bookName);
+    }
+
+    private UserProgress load(Long userId) {
+        UserProgress user = users.computeIfAbsent(userId, id -> {
+            UserProgress u = new UserProgress();
+            for (ReadingPosition rp : positionRepo.findByUserId(id)) {
+                Progress p = new Progress(rp.getUserId(), rp.getBookName(), rp.getChapterTitle(), rp.getUrl(),
+                        rp.getPosition(), rp.getProgress(), rp.getTimestamp() != null ? rp.getTimestamp() : 0L);
+                u.books.merge(p.bookName(), p, (a, b) -> b.timestamp() >= a.timestamp() ? b : a);
+            }
+            return u;
+        });
+        user.lastAccess = System.currentTimeMillis();
+        return user;
+    }
+
+    @Scheduled(fixedDelayString = "${app.progress.flush-interval-ms:10000}")
+    public void scheduledFlush() {
+        flush();
+        long expireBefore = System.currentTimeMillis() - idleTtl.toMillis();
+        users.entrySet().removeIf(e -> e.getValue().dirty.isEmpty() && e.getValue().lastAccess < expireBefore);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public synchronized int flush() {
+        List<Progress> batch = new ArrayList<>();
+        for (UserProgress user : users.values()) {
+            for (String bookName : List.copyOf(user.dirty.keySet())) {
+                user.dirty.remove(bookName);
+                Progress p = user.books.get(bookName);
+                if (p != null) {
+                    batch.add(p);
+                }
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            sqliteWriter.run(() -> {
+                for (Progress p : batch) {
+                    ReadingPosition rp = positionRepo.findByUserIdAndBookName(p.userId(), p.bookName())
+                            .orElseGet(ReadingPosition::new);
+                    if (rp.getTimestamp() != null && rp.getTimestamp() > p.timestamp()) {
+                        continue;
+                    }
+                    rp.setUserId(p.userId());
+                    rp.setBookName(p.bookName());
+                    rp.setChapterTitle(p.chapterTitle());
+                    rp.setUrl(p.url());
+                    rp.setPosition(p.position());
+                    rp.setProgress(p.progress());
+                    rp.setTimestamp(p.timestamp());
+                    positionRepo.save(rp);
+                }
+            });
+            log.debug("阅读进度批量写入 {} 条", batch.size());
+            return batch.size();
+        } catch (Exception e) {
+            for (Progress p : batch) {
+                UserProgress user = users.get(p.userId());
+                if (user != null) {
+                    user.dirty.put(p.bookName(), Boolean.TRUE);
+                }
+            }
+            log.error("阅读进度写入失败, {} 条留待重试", batch.size(), e);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.jp.epubbot.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * SQLite 只允许一个写者：所有写操作都提交到这里，由唯一的写线程取出，
+ * 每次取到的一批命令放在同一个事务里提交（group commit）。
+ * 批量事务失败时回滚，再逐条单独执行，失败只影响出错的那一条。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SqliteWriter {
+
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.writer.max-batch:200}")
+    private int maxBatch;
+
+    @Value("${app.writer.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // call() 等待写入结果的上限，写线程卡住或停止时调用方不会无限等待
+    @Value("${app.writer.call-timeout:30s}")
+    private Duration callTimeout;
+
+    private BlockingQueue<Command<?>> queue;
+    private Thread thread;
+    private TransactionTemplate tx;
+    private volatile boolean running = true;
+
+    private record Command<T>(Supplier<T> work, CompletableFuture<T> future) {
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        tx = new TransactionTemplate(transactionManager);
+        thread = new Thread(this::loop, "sqlite-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 异步提交一个写操作，work 在写线程的事务中执行
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (Thread.currentThread() == thread) {
+            // 写命令内部再次提交时直接在当前事务执行，避免自己等自己
+            try {
+                future.complete(work.get());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("写线程已停止"));
+            return future;
+        }
+        try {
+            queue.put(new Command<>(work, future));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public CompletableFuture<Void> submit(Runnable work) {
+        return submit(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * 提交并等待结果，写操作抛出的异常原样抛给调用方；超过 call-timeout 抛出 IllegalStateException，
+     * 此时写操作可能仍会在之后执行
+     */
+    public <T> T call(Supplier<T> work) {
+        try {
+            return submit(work).get(callTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待写入结果时被中断", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("等待写入结果超时 (" + callTimeout.toSeconds() + " 秒), 队列中还有 " + queue.size() + " 条", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    public void run(Runnable work) {
+        call(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    private void loop() {
+        List<Command<?>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Command<?> first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                execute(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable t) {
+                log.error("写线程异常", t);
+                // 未完成的命令不会再执行，不能让调用方一直等
+                batch.forEach(c -> c.future().completeExceptionally(t));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void execute(List<Command<?>> batch) {
+        if (batch.size() == 1) {
+            executeSingle(batch.get(0));
+            return;
+        }
+        List<Runnable> completions = new ArrayList<>(batch.size());
+        try {
+            tx.executeWithoutResult(status -> {
+                for (Command<?> command : batch) {
+                    completions.add(prepare(command));
+                }
+            });
+        } catch (Exception e) {
+            log.warn("批量写入失败, 逐条重试 {} 条: {}", batch.size(), e.getMessage());
+            for (Command<?> command : batch) {
+                executeSingle(command);
+            }
+            return;
+        }
+        // 事务提交后才通知调用方
+        completions.forEach(Runnable::run);
+    }
+
+    private <T> Runnable prepare(Command<T> command) {
+        T result = command.work().get();
+        return () -> command.future().complete(result);
+    }
+
+    private <T> void executeSingle(Command<T> command) {
+        T result;
+        try {
+            result = tx.execute(status -> command.work().get());
+        } catch (Exception e) {
+            command.future().completeExceptionally(e);
+            return;
+        }
+        command.future().complete(result);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join(10_000);
+        // 写线程已退出或超时未退出，剩余命令不会再执行，让等待方立即失败
+        List<Command<?>> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        if (!dropped.isEmpty()) {
+            log.warn("写线程停止时仍有 {} 条写入未执行", dropped.size());
+            IllegalStateException stopped = new IllegalStateException("写线程已停止");
+            dropped.forEach(c -> c.future().completeExceptionally(stopped));
+        }
+    }
+}
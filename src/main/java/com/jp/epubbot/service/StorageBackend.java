@@ -0,0 +1,83 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.entity.StorageKind;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 书籍文件存储。key 形如 "books/{bookId}/1.html"，由 app.storage.type 选择实现：
+ * r2（默认）、local（写入 data/books，由 /books/** 与 /read/ 提供访问）、memory（测试与压测）。
+ */
+public interface StorageBackend {
+
+    StorageKind kind();
+
+    /**
+     * @return 文件的访问地址
+     */
+    default String put(String key, byte[] content, String contentType) {
+        return put(key, content, contentType, null);
+    }
+
+    /**
+     * @param cacheControl 为空时使用默认缓存策略
+     */
+    String put(String key, byte[] content, String contentType, String cacheControl);
+
+    /**
+     * 异步写入，默认在调用线程同步完成
+     */
+    default CompletableFuture<String> putAsync(String key, byte[] content, String contentType) {
+        try {
+            return CompletableFuture.completedFuture(put(key, content, contentType));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return 文件内容，不存在时返回 null
+     */
+    byte[] get(String key);
+
+    /**
+     * @return 删除的文件数
+     */
+    long deletePrefix(String prefix);
+
+    List<String> list(String prefix);
+
+    String publicUrl(String key);
+
+    /**
+     * 阅读某一页的地址，默认就是页面文件本身
+     */
+    default String pageUrl(String bookId, int pageIndex) {
+        return publicUrl("books/" + bookId + "/" + pageIndex + ".html");
+    }
+
+    /**
+     * 开始写入一本书的页面，页码从 1 连续递增。默认每页作为 books/{bookId}/{页码}.html 单独 putAsync，
+     * 本地存储改为顺序写入单个书籍包
+     */
+    default PageWriter openPages(String bookId) {
+        return (pageIndex, html) -> putAsync("books/" + bookId + "/" + pageIndex + ".html", html, "text/html");
+    }
+
+    /**
+     * 一本书的页面写入过程：全部页面写完后 commit，未 commit 就 close 表示放弃
+     */
+    interface PageWriter extends AutoCloseable {
+
+        CompletableFuture<String> putPage(int pageIndex, byte[] html);
+
+        default void commit() throws IOException {
+        }
+
+        @Override
+        default void close() {
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.jp.epubbot.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessages;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发往 Telegram 的请求统一经过这里排队发送：
+ * 全局和每个会话各一个令牌桶，保证不超过 Telegram 的频率限制（全局约 30 条/秒，单会话约 1 条/秒）；
+ * 同一会话按提交顺序发送，遇到 429 按 retry_after 暂停该会话后重试；
+ * 同一会话相邻的删除请求合并成一次 deleteMessages，删除和其他请求之间仍按提交顺序发送。
+ * 调用方拿到 CompletableFuture，不会阻塞更新处理线程。
+ */
+@Slf4j
+@Component
+public class TelegramOutbox {
+
+    @Value("${telegram.outbox.global-rate:30}")
+    private double globalRate;
+
+    @Value("${telegram.outbox.per-chat-rate:1}")
+    private double perChatRate;
+
+    // 单会话允许的短时突发条数
+    @Value("${telegram.outbox.per-chat-burst:3}")
+    private int perChatBurst;
+
+    @Value("${telegram.outbox.senders:4}")
+    private int senders;
+
+    @Value("${telegram.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    // deleteMessages 单次最多 100 条
+    private static final int MAX_DELETE_BATCH = 100;
+    private static final long LANE_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private DefaultAbsSender sender;
+    private TokenBucket globalBucket;
+    private ExecutorService senderPool;
+    private Thread scheduler;
+    private volatile boolean running = true;
+
+    // 按插入顺序轮转，保证各会话公平
+    private final LinkedHashMap<Long, Lane> lanes = new LinkedHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong deletesCoalesced = new AtomicLong();
+
+    private abstract static class Entry {
+        int attempts;
+
+        abstract int size();
+
+        abstract void cancel();
+    }
+
+    private static class Job<T extends Serializable> extends Entry {
+        final BotApiMethod<T> method;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Job(BotApiMethod<T> method) {
+            this.method = method;
+        }
+
+        @Override
+        int size() {
+            return 1;
+        }
+
+        @Override
+        void cancel() {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 连续提交的删除请求，发送时合并成一次 deleteMessages
+     */
+    private static class DeleteBatch extends Entry {
+        final Map<Integer, CompletableFuture<Boolean>> ids = new LinkedHashMap<>();
+
+        @Override
+        int size() {
+            return ids.size();
+        }
+
+        @Override
+        void cancel() {
+            ids.values().forEach(f -> f.cancel(false));
+        }
+    }
+
+    private class Lane {
+        final Long chatId;
+        // 发送请求和删除请求共用一个队列，保持提交顺序
+        final Deque<Entry> entries = new ArrayDeque<>();
+        final TokenBucket bucket = new TokenBucket(perChatRate, Math.max(1, perChatBurst));
+        // 被 429 限流时，在此之前不再发送
+        long notBefore;
+        long lastUsed = System.nanoTime();
+        boolean busy;
+
+        Lane(Long chatId) {
+            this.chatId = chatId;
+        }
+
+        boolean hasWork() {
+            return !entries.isEmpty();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        globalBucket = new TokenBucket(globalRate, Math.max(1, globalRate));
+        AtomicInteger seq = new AtomicInteger();
+        senderPool = Executors.newFixedThreadPool(Math.max(1, senders), r -> {
+            Thread t = new Thread(r, "tg-outbox-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler = new Thread(this::loop, "tg-outbox");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    /**
+     * 由 Bot 在构造时绑定，发送时使用它的 execute
+     */
+    public void bind(DefaultAbsSender sender) {
+        this.sender = sender;
+    }
+
+    public <T extends Serializable> CompletableFuture<T> send(Long chatId, BotApiMethod<T> method) {
+        Job<T> job = new Job<>(method);
+        synchronized (this) {
+            lanes.computeIfAbsent(chatId, Lane::new).entries.add(job);
+            notifyAll();
+        }
+        return job.future;
+    }
+
+    /**
+     * 删除消息，紧跟在另一个未发出的删除之后时合并成一次请求
+     */
+    public CompletableFuture<Boolean> delete(Long chatId, Integer messageId) {
+        synchronized (this) {
+            Lane lane = lanes.computeIfAbsent(chatId, Lane::new);
+            for (Entry entry : lane.entries) {
+                if (entry instanceof DeleteBatch batch && batch.ids.containsKey(messageId)) {
+                    return batch.ids.get(messageId);
+                }
+            }
+            DeleteBatch batch = lane.entries.peekLast() instanceof DeleteBatch last && last.size() < MAX_DELETE_BATCH
+                    ? last : null;
+            if (batch == null) {
+                batch = new DeleteBatch();
+                lane.entries.add(batch);
+            }
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            batch.ids.put(messageId, future);
+            notifyAll();
+            return future;
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            try {
+                Runnable work;
+                synchronized (this) {
+                    work = nextWork();
+                    if (work == null) {
+                        // 有积压但都在限速中时短暂等待，令牌补充后再看
+                        wait(hasBacklog() ? 20 : 1000);
+                        continue;
+                    }
+                }
+                globalBucket.acquire();
+                senderPool.execute(work);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable t) {
+                log.error("Telegram 发送线程异常", t);
+            }
+        }
+    }
+
+    private boolean hasBacklog() {
+        for (Lane lane : lanes.values()) {
+            if (lane.hasWork()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 找到下一个可以发送的会话，取出它的一个请求，调用时持有锁
+     */
+    private Runnable nextWork() {
+        long now = System.nanoTime();
+        Iterator<Lane> it = lanes.values().iterator();
+        Lane picked = null;
+        while (it.hasNext()) {
+            Lane lane = it.next();
+            if (lane.busy || now < lane.notBefore) {
+                continue;
+            }
+            if (!lane.hasWork()) {
+                if (now - lane.lastUsed > LANE_IDLE_NANOS) {
+                    it.remove();
+                }
+                continue;
+            }
+            if (lane.bucket.tryAcquire()) {
+                picked = lane;
+                break;
+            }
+        }
+        if (picked == null) {
+            return null;
+        }
+        // 移到末尾，下一轮优先其他会话
+        lanes.remove(picked.chatId);
+        lanes.put(picked.chatId, picked);
+        picked.busy = true;
+        picked.lastUsed = now;
+
+        Lane lane = picked;
+        Entry entry = lane.entries.poll();
+        if (entry instanceof DeleteBatch batch) {
+            return () -> sendDeletes(lane, batch);
+        }
+        Job<?> job = (Job<?>) entry;
+        return () -> sendJob(lane, job);
+    }
+
+    private <T extends Serializable> void sendJob(Lane lane, Job<T> job) {
+        job.attempts++;
+        try {
+            T result = sender.execute(job.method);
+            sent.incrementAndGet();
+            job.future.complete(result);
+        } catch (Exception e) {
+            if (retryable(lane, e) && job.attempts < maxAttempts) {
+                synchronized (this) {
+                    lane.entries.addFirst(job);
+                }
+            } else {
+                failed.incrementAndGet();
+                job.future.completeExceptionally(e);
+            }
+        } finally {
+            release(lane);
+        }
+    }
+
+    private void sendDeletes(Lane lane, DeleteBatch batch) {
+        batch.attempts++;
+        String chatId = String.valueOf(lane.chatId);
+        List<Integer> ids = new ArrayList<>(batch.ids.keySet());
+        try {
+            Boolean ok = ids.size() == 1
+                    ? sender.execute(new DeleteMessage(chatId, ids.get(0)))
+                    : sender.execute(new DeleteMessages(chatId, ids));
+            sent.incrementAndGet();
+            if (ids.size() > 1) {
+                deletesCoalesced.addAndGet(ids.size() - 1);
+            }
+            batch.ids.values().forEach(f -> f.complete(Boolean.TRUE.equals(ok)));
+        } catch (Exception e) {
+            if (retryable(lane, e) && batch.attempts < maxAttempts) {
+                synchronized (this) {
+                    lane.entries.addFirst(batch);
+                }
+            } else {
+                // 消息已被删除或超过 48 小时等，重试也不会成功
+                failed.incrementAndGet();
+                log.error("delete message error: [{}]", e.toString());
+                batch.ids.values().forEach(f -> f.complete(false));
+            }
+        } finally {
+            release(lane);
+        }
+    }
+
+    /**
+     * 429 时按 retry_after 暂停该会话并清空全局令牌；其他错误不重试
+     */
+    private boolean retryable(Lane lane, Exception e) {
+        if (e instanceof TelegramApiRequestException re && Integer.valueOf(429).equals(re.getErrorCode())) {
+            int retryAfter = re.getParameters() != null && re.getParameters().getRetryAfter() != null
+                    ? re.getParameters().getRetryAfter() : 1;
+            rateLimited.incrementAndGet();
+            log.warn("Telegram 限流, 会话 {} 暂停 {} 秒", lane.chatId, retryAfter);
+            globalBucket.drain();
+            synchronized (this) {
+                lane.notBefore = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void release(Lane lane) {
+        lane.busy = false;
+        lane.lastUsed = System.nanoTime();
+        notifyAll();
+    }
+
+    /**
+     * @return 尚未发出的请求数
+     */
+    public synchronized int queued() {
+        int queued = 0;
+        for (Lane lane : lanes.values()) {
+            for (Entry entry : lane.entries) {
+                queued += entry.size();
+            }
+        }
+        return queued;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queued());
+        stats.put("chats", lanes.size());
+        stats.put("sent", sent.get());
+        stats.put("failed", failed.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("deletesCoalesced", deletesCoalesced.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        scheduler.interrupt();
+        scheduler.join(5_000);
+        senderPool.shutdown();
+        senderPool.awaitTermination(10, TimeUnit.SECONDS);
+        synchronized (this) {
+            int dropped = 0;
+            for (Lane lane : lanes.values()) {
+                for (Entry entry : lane.entries) {
+                    dropped += entry.size();
+                    entry.cancel();
+                }
+            }
+            if (dropped > 0) {
+                log.warn("Telegram 发送队列停止时仍有 {} 个请求未发送", dropped);
+            }
+        }
+    }
+}
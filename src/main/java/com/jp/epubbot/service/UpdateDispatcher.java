@@ -0,0 +1,177 @@
+package com.jp.epubbot.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Telegram 更新分发：不同会话并行处理，同一会话内严格按到达顺序串行。
+ * 每个会话一个队列，有任务时才占用一个工作线程，处理完即归还；
+ * 排队总数超过上限时拒绝，由调用方决定让 Telegram 重投还是在当前线程执行。
+ */
+@Slf4j
+@Component
+public class UpdateDispatcher {
+
+    @Value("${telegram.dispatcher.threads:8}")
+    private int threads;
+
+    @Value("${telegram.dispatcher.max-pending:1000}")
+    private int maxPending;
+
+    private ExecutorService pool;
+
+    private final Map<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong totalHandleMillis = new AtomicLong();
+
+    private static class ChatQueue {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        boolean running;
+        // 已从 chats 中移除，不再接收任务
+        boolean closed;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "tg-update-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return false 表示排队已满，更新未被接收
+     */
+    public boolean dispatch(Update update, Consumer<Update> handler) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        received.incrementAndGet();
+        long enqueuedAt = System.currentTimeMillis();
+        Runnable task = () -> handle(update, handler, enqueuedAt);
+
+        Long chatId = chatIdOf(update);
+        while (true) {
+            ChatQueue queue = chats.computeIfAbsent(chatId, id -> new ChatQueue());
+            boolean start;
+            synchronized (queue) {
+                if (queue.closed) {
+                    // 刚被清理线程移除，换新队列重试，否则同一会话会出现两个并行队列
+                    continue;
+                }
+                queue.tasks.add(task);
+                start = !queue.running;
+                queue.running = true;
+            }
+            if (start) {
+                pool.execute(() -> drain(chatId, queue));
+            }
+            return true;
+        }
+    }
+
+    private void drain(Long chatId, ChatQueue queue) {
+        while (true) {
+            Runnable task;
+            synchronized (queue) {
+                task = queue.tasks.poll();
+                if (task == null) {
+                    queue.running = false;
+                    queue.closed = true;
+                    chats.remove(chatId, queue);
+                    return;
+                }
+            }
+            task.run();
+        }
+    }
+
+    private void handle(Update update, Consumer<Update> handler, long enqueuedAt) {
+        long start = System.currentTimeMillis();
+        maxWaitMillis.accumulateAndGet(start - enqueuedAt, Math::max);
+        try {
+            handler.accept(update);
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("处理更新失败: {}", update.getUpdateId(), e);
+        } finally {
+            totalHandleMillis.addAndGet(System.currentTimeMillis() - start);
+            pending.decrementAndGet();
+        }
+    }
+
+    private static Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery()) {
+            if (update.getCallbackQuery().getMessage() != null) {
+                return update.getCallbackQuery().getMessage().getChatId();
+            }
+            return update.getCallbackQuery().getFrom().getId();
+        }
+        if (update.hasEditedMessage()) {
+            return update.getEditedMessage().getChatId();
+        }
+        return 0L;
+    }
+
+    public int pending() {
+        return pending.get();
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long done = completed.get() + failed.get();
+        stats.put("threads", threads);
+        stats.put("pending", pending.get());
+        stats.put("activeChats", chats.size());
+        stats.put("received", received.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("maxWaitMs", maxWaitMillis.get());
+        stats.put("avgHandleMs", done > 0 ? totalHandleMillis.get() / done : 0);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        pool.shutdown();
+        if (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("关闭时仍有 {} 条更新未处理完", pending.get());
+            pool.shutdownNow();
+        }
+    }
+}
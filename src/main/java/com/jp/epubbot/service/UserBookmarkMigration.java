@@ -0,0 +1,33 @@
+package com.jp.epubbot.service;
+
+import com.jp.epubbot.repository.UserBookmarkRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时清理重复书签（同一用户同一页面只保留最新一行），再建立 (user_id, url) 唯一索引，
+ * 之后书签写入走 ON CONFLICT 幂等更新。旧库存在重复数据，不能交给 ddl-auto 直接建唯一约束。
+ * 在 Bean 初始化阶段执行，Web 服务开始接收请求前索引已经存在，否则先到的 upsert 会因缺少约束而失败。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserBookmarkMigration {
+
+    private final UserBookmarkRepository bookmarkRepo;
+    private final SqliteWriter sqliteWriter;
+
+    @PostConstruct
+    public void migrate() {
+        int removed = sqliteWriter.call(() -> {
+            int n = bookmarkRepo.deleteDuplicates();
+            bookmarkRepo.createUserUrlUniqueIndex();
+            return n;
+        });
+        if (removed > 0) {
+            log.info("已清理重复书签 {} 条", removed);
+        }
+    }
+}